@@ -0,0 +1,93 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares GroceryAsync on a virtual-thread-per-task executor with the same facade on a fixed
+ * platform-thread pool. Each run submits a number of requests as fast as backpressure allows and
+ * reports throughput, submit-to-completion latency percentiles and the peak platform thread count.
+ *
+ * Usage: java AsyncExecutorBenchmark [workload=simulated|rewards] [requests=20000] [maxInFlight=1000]
+ *        [platformThreads=200] [latencyMs=5] [customerId=1]
+ * The simulated workload sleeps latencyMs per request to stand in for a JDBC round trip and needs no
+ * database. The rewards workload runs real updateRewardsAsync calls for customerId; size the pool
+ * (-Dgrocery.pool.maxSize) to maxInFlight for it.
+ * Virtual threads need JDK 21+; on older JDKs both runs use platform threads.
+ */
+public class AsyncExecutorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String workload = args.length > 0 ? args[0] : "simulated";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int platformThreads = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        long latencyMs = args.length > 4 ? Long.parseLong(args[4]) : 5;
+        int customerId = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        System.out.printf("workload=%s requests=%d maxInFlight=%d latencyMs=%d%n",
+                workload, requests, maxInFlight, latencyMs);
+        System.out.printf("%-28s %12s %10s %10s %10s %12s %8s%n",
+                "executor", "ops/sec", "p50 ms", "p99 ms", "max ms", "peakThreads", "errors");
+
+        for (int round = 0; round < 2; round++) { // first round warms up the JIT and the pool
+            boolean report = round == 1;
+            run("virtual-per-task", GroceryAsync.newVirtualThreadExecutor(), maxInFlight,
+                    workload, requests, latencyMs, customerId, report);
+            run("platform-fixed(" + platformThreads + ")", Executors.newFixedThreadPool(platformThreads),
+                    maxInFlight, workload, requests, latencyMs, customerId, report);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, ExecutorService executor, int maxInFlight, String workload, int requests,
+                            long latencyMs, int customerId, boolean report) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long[] latencies = new long[requests];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+        int[] errors = new int[1];
+
+        long start = System.nanoTime();
+        try (GroceryAsync async = new GroceryAsync(executor, maxInFlight)) {
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                long submitted = System.nanoTime();
+                CompletableFuture<Void> future;
+                if (workload.equals("rewards")) {
+                    future = async.updateRewardsAsync(customerId, 1);
+                } else {
+                    future = async.submit(() -> {
+                        try {
+                            Thread.sleep(latencyMs);
+                        } catch (InterruptedException e) {
+                            throw new SQLException(e);
+                        }
+                        return null;
+                    });
+                }
+                futures[i] = future.whenComplete((v, e) -> {
+                    latencies[index] = System.nanoTime() - submitted;
+                    if (e != null) {
+                        synchronized (errors) {
+                            errors[0]++;
+                        }
+                    }
+                });
+            }
+            CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (report) {
+            Arrays.sort(latencies);
+            System.out.printf("%-28s %12.0f %10.2f %10.2f %10.2f %12d %8d%n", name,
+                    requests / (elapsed / 1e9), latencies[requests / 2] / 1e6,
+                    latencies[(int) (requests * 0.99)] / 1e6, latencies[requests - 1] / 1e6,
+                    threads.getPeakThreadCount(), errors[0]);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bulk CSV import for products, customers and vendors.
+ * A parser thread streams the file, converts and validates each record and hands chunks to the
+ * writer (the calling thread), which inserts each chunk with addBatch/executeBatch and commits it
+ * together with the import's progress row in ImportProgress. Because progress commits atomically
+ * with the data, an interrupted import resumes exactly after the last committed chunk. The last
+ * chunk's transaction deletes the progress row instead, so a later file with the same name (e.g. a
+ * nightly products.csv) is imported from the top.
+ * Records that fail validation or are refused by the database are written to a side file
+ * (the input path plus ".rejects") with their line number and reason, and never stop the import.
+ * A products import ends by reloading the application's inventory snapshot, if it is loaded.
+ *
+ * Usage: java BulkImporter products|customers|vendors file.csv [chunkSize=5000] [--restart]
+ * The first line of the file must be a header naming the columns (in any order).
+ */
+public class BulkImporter {
+
+    private static final int READ_BUFFER_CHARS = 1 << 20;
+    private static final int QUEUED_CHUNKS = 4;
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+
+    private enum ColumnType { TEXT, INT, DECIMAL }
+
+    /** The importable tables, with their columns in INSERT order. Optional columns may be empty (NULL). */
+    private enum Entity {
+        PRODUCTS("Products", new String[]{"name", "vendor_id", "price", "quantity"},
+                new ColumnType[]{ColumnType.TEXT, ColumnType.INT, ColumnType.DECIMAL, ColumnType.INT},
+                new boolean[]{true, false, true, false}),
+        CUSTOMERS("Customers", new String[]{"first_name", "last_name", "email", "phone", "address"},
+                new ColumnType[]{ColumnType.TEXT, ColumnType.TEXT, ColumnType.TEXT, ColumnType.TEXT, ColumnType.TEXT},
+                new boolean[]{true, true, true, true, true}),
+        VENDORS("Vendors", new String[]{"name", "phone", "email", "address"},
+                new ColumnType[]{ColumnType.TEXT, ColumnType.TEXT, ColumnType.TEXT, ColumnType.TEXT},
+                new boolean[]{true, true, true, true});
+
+        final String table;
+        final String[] columns;
+        final ColumnType[] types;
+        final boolean[] required;
+
+        Entity(String table, String[] columns, ColumnType[] types, boolean[] required) {
+            this.table = table;
+            this.columns = columns;
+            this.types = types;
+            this.required = required;
+        }
+
+        String insertSql() {
+            StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                    .append(String.join(", ", columns)).append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    /** One CSV record after parsing: typed values, or the reason it was rejected. */
+    private static final class Record {
+        final long line;
+        final String raw;
+        final Object[] values;
+        final String rejectReason;
+
+        Record(long line, String raw, Object[] values, String rejectReason) {
+            this.line = line;
+            this.raw = raw;
+            this.values = values;
+            this.rejectReason = rejectReason;
+        }
+    }
+
+    /**
+     * A run of consecutive records; last is set on the final one. An empty chunk with no error marks
+     * the end of the file.
+     */
+    private static final class Chunk {
+        final List<Record> records;
+        final boolean last;
+        final Exception error;
+
+        Chunk(List<Record> records, boolean last, Exception error) {
+            this.records = records;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+    private final Entity entity;
+    private final Path input;
+    private final Path rejectsFile;
+    private final String source;
+    private final int chunkSize;
+
+    private long recordsDone;
+    private long imported;
+    private long rejected;
+
+    public BulkImporter(String entityName, Path input, int chunkSize) {
+        this.entity = Entity.valueOf(entityName.toUpperCase(Locale.ROOT));
+        this.input = input;
+        this.rejectsFile = Paths.get(input + ".rejects");
+        this.source = entity.table + ":" + input.getFileName();
+        this.chunkSize = chunkSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java BulkImporter <products|customers|vendors> <file.csv> [chunkSize=5000] [--restart]");
+            System.exit(2);
+        }
+        int chunkSize = args.length > 2 && !args[2].startsWith("--") ? Integer.parseInt(args[2]) : 5000;
+        boolean restart = args[args.length - 1].equals("--restart");
+        new BulkImporter(args[0], Paths.get(args[1]), chunkSize).run(restart);
+        System.exit(0);
+    }
+
+    /**
+     * Imports the file. Unless restart is set, records already committed by an earlier,
+     * interrupted run of the same file are skipped.
+     */
+    public void run(boolean restart) throws SQLException, IOException, InterruptedException {
+        long resumeFrom = loadProgress(restart);
+        if (resumeFrom > 0) {
+            System.out.println("Resuming " + source + " after " + resumeFrom + " records.");
+        }
+        recordsDone = resumeFrom;
+
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        Thread parser = new Thread(() -> parse(resumeFrom, queue), "csv-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        boolean finished = false;
+        try (BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk.error != null) {
+                    throw new IOException("Error reading " + input + ": " + chunk.error.getMessage(), chunk.error);
+                }
+                if (chunk.records.isEmpty()) {
+                    break;
+                }
+                writeChunk(chunk.records, chunk.last, rejects);
+                finished |= chunk.last;
+
+                long now = System.nanoTime();
+                if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                    lastReport = now;
+                    report(start, now);
+                }
+            }
+        }
+        if (!finished) {
+            finishProgress(); // nothing left to write this run (empty file, or everything was already done)
+        }
+        if (entity == Entity.PRODUCTS && imported > 0) {
+            GroceryManagementApp.productsImported(); // one streamed pass, rather than a put per imported row
+        }
+        report(start, System.nanoTime());
+        System.out.println("Import of " + source + " complete." + (rejected > 0 ? " Rejects written to " + rejectsFile : ""));
+    }
+
+    private void report(long start, long now) {
+        double seconds = Math.max((now - start) / 1e9, 1e-9);
+        System.out.printf("%s: %d records done (%d imported, %d rejected this run), %.0f records/sec%n",
+                source, recordsDone, imported, rejected, (imported + rejected) / seconds);
+    }
+
+    // --- Parsing (runs on the parser thread) ---
+
+    private void parse(long skip, BlockingQueue<Chunk> queue) {
+        try (BufferedReader reader = new BufferedReader(
+                Files.newBufferedReader(input, StandardCharsets.UTF_8), READ_BUFFER_CHARS)) {
+            long[] lineNo = {0};
+            List<String> header = readRecord(reader, lineNo, new StringBuilder());
+            if (header == null) {
+                queue.put(new Chunk(new ArrayList<>(), false, null));
+                return;
+            }
+            int[] columnIndex = mapHeader(header);
+
+            long seen = 0;
+            List<Record> records = new ArrayList<>(chunkSize);
+            List<Record> full = null; // held back one chunk, so the final chunk can be marked last
+            StringBuilder raw = new StringBuilder();
+            while (true) {
+                long line = lineNo[0] + 1;
+                List<String> fields = readRecord(reader, lineNo, raw);
+                if (fields == null) {
+                    break;
+                }
+                if (seen++ < skip) {
+                    continue; // committed by an earlier run
+                }
+                records.add(convert(line, raw.toString(), fields, columnIndex));
+                if (records.size() == chunkSize) {
+                    if (full != null) {
+                        queue.put(new Chunk(full, false, null));
+                    }
+                    full = records;
+                    records = new ArrayList<>(chunkSize);
+                }
+            }
+            if (full != null) {
+                queue.put(new Chunk(full, records.isEmpty(), null));
+            }
+            if (!records.isEmpty()) {
+                queue.put(new Chunk(records, true, null));
+            }
+            queue.put(new Chunk(new ArrayList<>(), false, null));
+        } catch (IOException | RuntimeException e) {
+            try {
+                queue.put(new Chunk(null, false, e));
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Maps each entity column to its position in the header; fails if a required column is missing. */
+    private int[] mapHeader(List<String> header) throws IOException {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            positions.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        int[] index = new int[entity.columns.length];
+        for (int c = 0; c < index.length; c++) {
+            Integer pos = positions.get(entity.columns[c]);
+            if (pos == null && entity.required[c]) {
+                throw new IOException("CSV header is missing required column '" + entity.columns[c] + "'");
+            }
+            index[c] = pos == null ? -1 : pos;
+        }
+        return index;
+    }
+
+    private Record convert(long line, String raw, List<String> fields, int[] columnIndex) {
+        Object[] values = new Object[columnIndex.length];
+        for (int c = 0; c < columnIndex.length; c++) {
+            String text = columnIndex[c] >= 0 && columnIndex[c] < fields.size() ? fields.get(columnIndex[c]).trim() : "";
+            if (text.isEmpty()) {
+                if (entity.required[c]) {
+                    return new Record(line, raw, null, "missing " + entity.columns[c]);
+                }
+                continue; // NULL
+            }
+            try {
+                switch (entity.types[c]) {
+                    case INT:
+                        values[c] = Integer.valueOf(text);
+                        break;
+                    case DECIMAL:
+                        values[c] = new BigDecimal(text);
+                        break;
+                    default:
+                        values[c] = text;
+                }
+            } catch (NumberFormatException e) {
+                return new Record(line, raw, null, "invalid " + entity.columns[c] + " '" + text + "'");
+            }
+        }
+        return new Record(line, raw, values, null);
+    }
+
+    /**
+     * Reads one RFC 4180 record: comma-separated, optionally double-quoted fields, "" for a quote
+     * inside a quoted field, and line breaks allowed inside quotes. Returns null at end of input.
+     * The record's raw text is left in raw (for the rejects file).
+     */
+    static List<String> readRecord(BufferedReader reader, long[] lineNo, StringBuilder raw) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        lineNo[0]++;
+        raw.setLength(0);
+        raw.append(line);
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                String next = reader.readLine(); // quoted field continues on the next line
+                if (next == null) {
+                    throw new IOException("Unterminated quoted field starting before line " + lineNo[0]);
+                }
+                lineNo[0]++;
+                raw.append('\n').append(next);
+                field.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+            char ch = line.charAt(i++);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // --- Writing (runs on the calling thread) ---
+
+    /**
+     * Inserts one chunk and advances the progress row in the same transaction (or deletes it, for the
+     * last chunk). If the batch is refused, the chunk is rolled back and replayed row by row under
+     * savepoints so only the bad rows are rejected.
+     */
+    private void writeChunk(List<Record> records, boolean last, BufferedWriter rejects) throws SQLException, IOException {
+        String[] dbReasons = new String[records.size()];
+        long target = recordsDone + records.size();
+
+        TransactionRetry.inTransaction(GroceryManagementApp.getDataSource(), conn -> {
+            Arrays.fill(dbReasons, null);
+            try (PreparedStatement stmt = conn.prepareStatement(entity.insertSql())) {
+                try {
+                    for (Record r : records) {
+                        if (r.values != null) {
+                            bind(stmt, r.values);
+                            stmt.addBatch();
+                        }
+                    }
+                    stmt.executeBatch();
+                } catch (SQLException batchError) {
+                    if (TransactionRetry.isRetryable(batchError)) {
+                        throw batchError;
+                    }
+                    conn.rollback();
+                    stmt.clearBatch();
+                    for (int i = 0; i < records.size(); i++) {
+                        Record r = records.get(i);
+                        if (r.values == null) {
+                            continue;
+                        }
+                        Savepoint savepoint = conn.setSavepoint();
+                        try {
+                            bind(stmt, r.values);
+                            stmt.executeUpdate();
+                            conn.releaseSavepoint(savepoint);
+                        } catch (SQLException rowError) {
+                            if (TransactionRetry.isRetryable(rowError)) {
+                                throw rowError;
+                            }
+                            conn.rollback(savepoint);
+                            dbReasons[i] = rowError.getMessage();
+                        }
+                    }
+                }
+            }
+            if (last) {
+                deleteProgress(conn);
+            } else {
+                saveProgress(conn, target);
+            }
+        });
+
+        recordsDone = target;
+        for (int i = 0; i < records.size(); i++) {
+            Record r = records.get(i);
+            String reason = r.rejectReason != null ? r.rejectReason : dbReasons[i];
+            if (reason != null) {
+                rejects.write(r.line + "\t" + reason.replace('\n', ' ') + "\t" + r.raw);
+                rejects.newLine();
+                rejected++;
+            } else {
+                imported++;
+            }
+        }
+        rejects.flush();
+    }
+
+    private void bind(PreparedStatement stmt, Object[] values) throws SQLException {
+        for (int c = 0; c < values.length; c++) {
+            Object v = values[c];
+            if (v == null) {
+                stmt.setNull(c + 1, entity.types[c] == ColumnType.TEXT ? Types.VARCHAR
+                        : entity.types[c] == ColumnType.INT ? Types.INTEGER : Types.DECIMAL);
+            } else if (v instanceof Integer) {
+                stmt.setInt(c + 1, (Integer) v);
+            } else if (v instanceof BigDecimal) {
+                stmt.setBigDecimal(c + 1, (BigDecimal) v);
+            } else {
+                stmt.setString(c + 1, (String) v);
+            }
+        }
+    }
+
+    // --- Progress (ImportProgress table) ---
+
+    private long loadProgress(boolean restart) throws SQLException {
+        try (Connection conn = GroceryManagementApp.getConnection()) {
+            if (restart) {
+                deleteProgress(conn);
+                return 0;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT records_done FROM ImportProgress WHERE source = ?")) {
+                stmt.setString(1, source);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        }
+    }
+
+    private void finishProgress() throws SQLException {
+        try (Connection conn = GroceryManagementApp.getConnection()) {
+            deleteProgress(conn);
+        }
+    }
+
+    private void deleteProgress(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM ImportProgress WHERE source = ?")) {
+            stmt.setString(1, source);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void saveProgress(Connection conn, long done) throws SQLException {
+        try (PreparedStatement update = conn.prepareStatement("UPDATE ImportProgress SET records_done = ? WHERE source = ?")) {
+            update.setLong(1, done);
+            update.setString(2, source);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO ImportProgress (source, records_done) VALUES (?, ?)")) {
+            insert.setString(1, source);
+            insert.setLong(2, done);
+            insert.executeUpdate();
+        }
+    }
+}
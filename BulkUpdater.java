@@ -0,0 +1,261 @@
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Typed multi-row, multi-field updates of Customers, Vendors, Products and Coupons. Each row is an id
+ * plus a map of column to value; columns are checked against a per-table whitelist and values against
+ * the column's type before anything is written. Rows that set the same columns share one UPDATE
+ * statement and go out as JDBC batches, chunkSize rows per transaction in id order, so a repricing of
+ * 200k products is a few hundred short commits rather than 200k connections. After each commit the
+ * listener hears which rows changed, to keep caches and indexes in step.
+ */
+public final class BulkUpdater {
+
+    enum Type { STRING, INT, DECIMAL, DATE }
+
+    /** One updatable column. */
+    private static final class Column {
+        final Type type;
+        final boolean nullable;
+
+        Column(Type type, boolean nullable) {
+            this.type = type;
+            this.nullable = nullable;
+        }
+    }
+
+    /** The tables that can be updated, with their key and whitelisted columns. */
+    public enum Table {
+        CUSTOMERS("Customers", "customer_id", Map.of(
+                "first_name", new Column(Type.STRING, false), "last_name", new Column(Type.STRING, false),
+                "email", new Column(Type.STRING, false), "phone", new Column(Type.STRING, false),
+                "address", new Column(Type.STRING, false))),
+        VENDORS("Vendors", "vendor_id", Map.of(
+                "name", new Column(Type.STRING, false), "phone", new Column(Type.STRING, false),
+                "email", new Column(Type.STRING, false), "address", new Column(Type.STRING, false))),
+        PRODUCTS("Products", "product_id", Map.of(
+                "name", new Column(Type.STRING, false), "vendor_id", new Column(Type.INT, true),
+                "price", new Column(Type.DECIMAL, false), "quantity", new Column(Type.INT, false))),
+        COUPONS("Coupons", "coupon_id", Map.of(
+                "code", new Column(Type.STRING, false), "discount", new Column(Type.DECIMAL, false),
+                "expiration_date", new Column(Type.DATE, false)));
+
+        final String table;
+        final String key;
+        private final Map<String, Column> columns;
+
+        Table(String table, String key, Map<String, Column> columns) {
+            this.table = table;
+            this.key = key;
+            this.columns = columns;
+        }
+
+        private Column column(String field) {
+            Column column = columns.get(field);
+            if (column == null) {
+                throw new IllegalArgumentException("Column " + field + " of " + table + " cannot be updated; allowed: "
+                        + new TreeSet<>(columns.keySet()));
+            }
+            return column;
+        }
+
+        /**
+         * Converts console input for a column to the value bulk updates expect (String, Integer,
+         * BigDecimal or LocalDate; an empty string is NULL for a nullable column).
+         */
+        public Object parse(String field, String text) {
+            Column column = column(field);
+            String trimmed = text.trim();
+            if (column.nullable && trimmed.isEmpty()) {
+                return null;
+            }
+            try {
+                switch (column.type) {
+                    case INT: return Integer.valueOf(trimmed);
+                    case DECIMAL: return new BigDecimal(trimmed);
+                    case DATE: return LocalDate.parse(trimmed);
+                    default: return text;
+                }
+            } catch (NumberFormatException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid value for " + field + ": " + text, e);
+            }
+        }
+
+        /** True if updating any of the fields can change what the product cache holds. */
+        boolean touchesProductCache(Iterable<String> fields) {
+            if (this != PRODUCTS) {
+                return false;
+            }
+            for (String field : fields) {
+                if (field.equals("name") || field.equals("price")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** One row to update: its id and the new value of each column to change. */
+    public static final class Row {
+        public final int id;
+        public final Map<String, Object> values;
+
+        public Row(int id, Map<String, Object> values) {
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("Nothing to update for id " + id);
+            }
+            this.id = id;
+            this.values = values;
+        }
+    }
+
+    /** Called after each committed chunk with the rows it updated (in id order) and the columns it set. */
+    @FunctionalInterface
+    public interface ChunkListener {
+        void committed(Table table, List<Row> rows, Iterable<String> columns) throws SQLException;
+    }
+
+    /** What a bulk update did and how fast. */
+    public static final class Result {
+        public final long rows;
+        public final long rowsMatched;
+        public final int columnSets;
+        public final int chunks;
+        public final long elapsedNanos;
+
+        Result(long rows, long rowsMatched, int columnSets, int chunks, long elapsedNanos) {
+            this.rows = rows;
+            this.rowsMatched = rowsMatched;
+            this.columnSets = columnSets;
+            this.chunks = chunks;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d, matched=%d, columnSets=%d, chunks=%d, elapsed=%.1fms, throughput=%.0f rows/s",
+                    rows, rowsMatched, columnSets, chunks, elapsedNanos / 1e6, rowsPerSecond());
+        }
+    }
+
+    private BulkUpdater() {
+    }
+
+    /**
+     * Applies the rows in chunks of chunkSize, one transaction per chunk. Every row is validated first,
+     * so a bad column or value fails with IllegalArgumentException before anything is written. A failing
+     * chunk stops the update; earlier chunks stay committed (and reported to the listener).
+     * Rows naming an id that does not exist are skipped, which shows as rowsMatched < rows.
+     */
+    public static Result update(DataSource dataSource, Table table, List<Row> rows, int chunkSize,
+                                ChunkListener listener) throws SQLException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        long started = System.nanoTime();
+
+        // Group by the set of columns written; TreeSet gives each set one canonical column order.
+        Map<List<String>, List<Row>> groups = new LinkedHashMap<>();
+        for (Row row : rows) {
+            for (Map.Entry<String, Object> e : row.values.entrySet()) {
+                check(table, e.getKey(), e.getValue());
+            }
+            groups.computeIfAbsent(new ArrayList<>(new TreeSet<>(row.values.keySet())), k -> new ArrayList<>()).add(row);
+        }
+
+        long matched = 0;
+        int chunks = 0;
+        for (Map.Entry<List<String>, List<Row>> group : groups.entrySet()) {
+            List<String> columns = group.getKey();
+            List<Row> groupRows = group.getValue();
+            groupRows.sort(Comparator.comparingInt(r -> r.id)); // rows lock in primary key order
+            String sql = updateSql(table, columns);
+            for (int from = 0; from < groupRows.size(); from += chunkSize) {
+                List<Row> chunk = groupRows.subList(from, Math.min(from + chunkSize, groupRows.size()));
+                long[] chunkMatched = new long[1];
+                TransactionRetry.inTransaction(dataSource, conn -> {
+                    chunkMatched[0] = 0;
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        for (Row row : chunk) {
+                            int param = 1;
+                            for (String column : columns) {
+                                bind(stmt, param++, table.column(column).type, row.values.get(column));
+                            }
+                            stmt.setInt(param, row.id);
+                            stmt.addBatch();
+                        }
+                        for (int count : stmt.executeBatch()) {
+                            // SUCCESS_NO_INFO (-2) from rewritten batches: count the row as matched.
+                            chunkMatched[0] += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : count;
+                        }
+                    }
+                });
+                matched += chunkMatched[0];
+                chunks++;
+                if (listener != null) {
+                    listener.committed(table, Collections.unmodifiableList(chunk), columns);
+                }
+            }
+        }
+        return new Result(rows.size(), matched, groups.size(), chunks, System.nanoTime() - started);
+    }
+
+    private static String updateSql(Table table, List<String> columns) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table.table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns.get(i)).append(" = ?");
+        }
+        return sql.append(" WHERE ").append(table.key).append(" = ?").toString();
+    }
+
+    private static void check(Table table, String field, Object value) {
+        Column column = table.column(field);
+        if (value == null) {
+            if (!column.nullable) {
+                throw new IllegalArgumentException(table.table + "." + field + " cannot be NULL");
+            }
+            return;
+        }
+        boolean ok;
+        switch (column.type) {
+            case INT: ok = value instanceof Integer; break;
+            case DECIMAL: ok = value instanceof BigDecimal; break;
+            case DATE: ok = value instanceof LocalDate; break;
+            default: ok = value instanceof String; break;
+        }
+        if (!ok) {
+            throw new IllegalArgumentException(table.table + "." + field + " expects " + column.type
+                    + ", got " + value.getClass().getSimpleName());
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, int param, Type type, Object value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(param, Types.INTEGER); // only vendor_id is nullable
+            return;
+        }
+        switch (type) {
+            case INT: stmt.setInt(param, (Integer) value); break;
+            case DECIMAL: stmt.setBigDecimal(param, (BigDecimal) value); break;
+            case DATE: stmt.setDate(param, Date.valueOf((LocalDate) value)); break;
+            default: stmt.setString(param, (String) value); break;
+        }
+    }
+}
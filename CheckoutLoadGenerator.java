@@ -0,0 +1,433 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless checkout load generator for release capacity testing. It seeds customers, vendors and
+ * products at the requested scale, then issues a mix of cash, credit and basket sales with Zipfian
+ * product popularity at an open-loop (Poisson) arrival rate: requests are started on schedule whether
+ * or not earlier ones have finished, and latency is measured from the scheduled start, so a slow server
+ * shows up as latency and backlog rather than as a politely reduced request rate.
+ *
+ * A run can be recorded to a session file and replayed later (against another build or configuration)
+ * with exactly the same requests at the same offsets. Sessions refer to customers and products by
+ * seeding order, and replay seeds a fresh set at the recorded scale, so replays are self-contained.
+ *
+ * Usage: java CheckoutLoadGenerator [key=value ...]
+ *   customers=1000 vendors=20 products=5000 stock=1000000   scale of the seeded data
+ *   rate=200 duration=60                                    arrivals per second, seconds to run
+ *   mix=cash:60,credit:30,basket:10 basketSize=4 zipf=1.0   request mix and product popularity skew
+ *   workers=64 seed=42                                      worker threads, random seed
+ *   record=session.txt | replay=session.txt                 record this run, or replay a recorded one
+ * Point it at a scratch database (-Dgrocery.db.url=...) and size -Dgrocery.pool.maxSize to workers.
+ * Seeded rows are left behind.
+ */
+public class CheckoutLoadGenerator {
+
+    private static final String SESSION_HEADER = "# checkout-session v1";
+
+    enum Kind {
+        CASH, CREDIT, BASKET
+    }
+
+    /** One scheduled request; products and customer are indexes into the seeded id arrays. */
+    static final class Request {
+        final long offsetNanos;
+        final Kind kind;
+        final int customer;
+        final int[] products;
+        final int[] quantities;
+
+        Request(long offsetNanos, Kind kind, int customer, int[] products, int[] quantities) {
+            this.offsetNanos = offsetNanos;
+            this.kind = kind;
+            this.customer = customer;
+            this.products = products;
+            this.quantities = quantities;
+        }
+
+        String toLine() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(offsetNanos).append('\t').append(kind).append('\t').append(customer).append('\t');
+            for (int i = 0; i < products.length; i++) {
+                sb.append(i == 0 ? "" : ",").append(products[i]).append(':').append(quantities[i]);
+            }
+            return sb.toString();
+        }
+
+        static Request parse(String line) {
+            String[] fields = line.split("\t");
+            String[] lines = fields[3].split(",");
+            int[] products = new int[lines.length];
+            int[] quantities = new int[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                products[i] = Integer.parseInt(lines[i].substring(0, colon));
+                quantities[i] = Integer.parseInt(lines[i].substring(colon + 1));
+            }
+            return new Request(Long.parseLong(fields[0]), Kind.valueOf(fields[1]), Integer.parseInt(fields[2]),
+                    products, quantities);
+        }
+    }
+
+    /**
+     * Zipf(s) over ranks 0..n-1 (rank 0 most popular) by inverse CDF: the cumulative weights are
+     * computed once, and each sample is a binary search, with no allocation.
+     */
+    static final class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double exponent) {
+            cdf = new double[n];
+            double total = 0.0;
+            for (int i = 0; i < n; i++) {
+                total += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= total;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            double u = random.nextDouble();
+            int lo = 0;
+            int hi = cdf.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /** Outcome counters and latency for one request kind. */
+    static final class KindStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder outOfStock = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Arguments are key=value pairs; see the class documentation.");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        String replay = options.get("replay");
+        String record = options.get("record");
+        int workers = Integer.parseInt(options.getOrDefault("workers", "64"));
+
+        int customers;
+        int vendors;
+        int products;
+        List<Request> replayed = null;
+        if (replay != null) {
+            // Scale comes from the session header so indexes resolve to freshly seeded rows.
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(replay), StandardCharsets.UTF_8)) {
+                Map<String, String> header = parseHeader(in.readLine());
+                customers = Integer.parseInt(header.get("customers"));
+                vendors = Integer.parseInt(header.get("vendors"));
+                products = Integer.parseInt(header.get("products"));
+                options.putIfAbsent("stock", header.get("stock"));
+                replayed = new ArrayList<>();
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        replayed.add(Request.parse(line));
+                    }
+                }
+            }
+        } else {
+            customers = Integer.parseInt(options.getOrDefault("customers", "1000"));
+            vendors = Integer.parseInt(options.getOrDefault("vendors", "20"));
+            products = Integer.parseInt(options.getOrDefault("products", "5000"));
+        }
+        int stock = Integer.parseInt(options.getOrDefault("stock", "1000000"));
+
+        System.out.printf("Seeding %d customers, %d vendors, %d products...%n", customers, vendors, products);
+        int[] vendorIds = seedVendors(vendors);
+        int[] productIds = seedProducts(products, vendorIds, stock);
+        int[] customerIds = seedCustomers(customers);
+
+        Map<Kind, KindStats> stats = new HashMap<>();
+        for (Kind kind : Kind.values()) {
+            stats.put(kind, new KindStats());
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "checkout-worker");
+                    t.setDaemon(true);
+                    return t;
+                });
+        long rollbacksBefore = OperationMetrics.rollbackCount(OperationMetrics.Op.MAKE_TRANSACTION)
+                + OperationMetrics.rollbackCount(OperationMetrics.Op.MAKE_BASKET_TRANSACTION);
+        long retriesBefore = TransactionRetry.retryCount();
+
+        BufferedWriter recorder = null;
+        if (record != null) {
+            recorder = Files.newBufferedWriter(Paths.get(record), StandardCharsets.UTF_8);
+            recorder.write(String.format("%s customers=%d vendors=%d products=%d stock=%d%n",
+                    SESSION_HEADER, customers, vendors, products, stock));
+        }
+
+        AtomicLong maxBacklog = new AtomicLong();
+        long start = System.nanoTime();
+        long issued;
+        if (replayed != null) {
+            System.out.printf("Replaying %d requests from %s with %d workers...%n", replayed.size(), replay, workers);
+            issued = 0;
+            for (Request request : replayed) {
+                dispatch(request, start, executor, stats, customerIds, productIds, maxBacklog);
+                issued++;
+            }
+        } else {
+            double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+            long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+            int basketSize = Integer.parseInt(options.getOrDefault("basketSize", "4"));
+            double zipf = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+            Kind[] mixTable = parseMix(options.getOrDefault("mix", "cash:60,credit:30,basket:10"));
+            SplittableRandom random = new SplittableRandom(Long.parseLong(options.getOrDefault("seed", "42")));
+            ZipfSampler popularity = new ZipfSampler(products, zipf);
+            System.out.printf("Running %.0f req/s for %d s (mix %s, zipf %.2f) with %d workers...%n",
+                    rate, TimeUnit.NANOSECONDS.toSeconds(durationNanos), options.getOrDefault("mix", "cash:60,credit:30,basket:10"),
+                    zipf, workers);
+
+            issued = 0;
+            double meanGapNanos = 1e9 / rate;
+            double offset = 0.0;
+            while (true) {
+                offset += -Math.log(1.0 - random.nextDouble()) * meanGapNanos; // exponential gaps: Poisson arrivals
+                if (offset >= durationNanos) {
+                    break;
+                }
+                Kind kind = mixTable[random.nextInt(mixTable.length)];
+                int lines = kind == Kind.BASKET ? 1 + random.nextInt(basketSize) : 1;
+                int[] items = new int[lines];
+                int[] quantities = new int[lines];
+                for (int i = 0; i < lines; i++) {
+                    items[i] = popularity.sample(random);
+                    quantities[i] = 1;
+                }
+                Request request = new Request((long) offset, kind, random.nextInt(customers), items, quantities);
+                if (recorder != null) {
+                    recorder.write(request.toLine());
+                    recorder.newLine();
+                }
+                dispatch(request, start, executor, stats, customerIds, productIds, maxBacklog);
+                issued++;
+            }
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+        long scheduledEnd = System.nanoTime();
+
+        executor.shutdown();
+        while (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            System.out.printf("  draining: %d requests still queued or running%n",
+                    executor.getQueue().size() + executor.getActiveCount());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        report(stats, issued, elapsed, scheduledEnd - start, maxBacklog.get(),
+                OperationMetrics.rollbackCount(OperationMetrics.Op.MAKE_TRANSACTION)
+                        + OperationMetrics.rollbackCount(OperationMetrics.Op.MAKE_BASKET_TRANSACTION) - rollbacksBefore,
+                TransactionRetry.retryCount() - retriesBefore);
+        if (record != null) {
+            System.out.println("Session recorded to " + record);
+        }
+        System.exit(0);
+    }
+
+    /** Waits until the request's scheduled time, then hands it to a worker; never waits for earlier requests. */
+    private static void dispatch(Request request, long start, ExecutorService executor, Map<Kind, KindStats> stats,
+                                 int[] customerIds, int[] productIds, AtomicLong maxBacklog) {
+        long due = start + request.offsetNanos;
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        KindStats kindStats = stats.get(request.kind);
+        executor.execute(() -> {
+            try {
+                run(request, customerIds, productIds);
+                kindStats.ok.increment();
+            } catch (SQLDataException e) {
+                kindStats.outOfStock.increment();
+            } catch (SQLException e) {
+                kindStats.errors.increment();
+            } finally {
+                kindStats.latency.record(System.nanoTime() - due);
+            }
+        });
+        long backlog = ((ThreadPoolExecutor) executor).getQueue().size();
+        if (backlog > maxBacklog.get()) {
+            maxBacklog.set(backlog); // only the dispatching thread writes it
+        }
+    }
+
+    private static void run(Request request, int[] customerIds, int[] productIds) throws SQLException {
+        int customerId = customerIds[request.customer];
+        switch (request.kind) {
+            case CASH:
+                GroceryManagementApp.executeSale(customerId, productIds[request.products[0]], "cash", request.quantities[0]);
+                break;
+            case CREDIT:
+                GroceryManagementApp.executeSale(customerId, productIds[request.products[0]], "credit", request.quantities[0]);
+                break;
+            default:
+                List<GroceryManagementApp.BasketLine> lines = new ArrayList<>(request.products.length);
+                for (int i = 0; i < request.products.length; i++) {
+                    lines.add(new GroceryManagementApp.BasketLine(productIds[request.products[i]], request.quantities[i]));
+                }
+                GroceryManagementApp.executeBasketSale(customerId, lines, "credit");
+        }
+    }
+
+    private static void report(Map<Kind, KindStats> stats, long issued, long elapsedNanos, long scheduleNanos,
+                               long maxBacklog, long rollbacks, long retries) {
+        System.out.printf("%nIssued %d requests in %.1f s (offered %.1f req/s); completed in %.1f s; max backlog %d%n",
+                issued, scheduleNanos / 1e9, issued / (scheduleNanos / 1e9), elapsedNanos / 1e9, maxBacklog);
+        System.out.printf("%-8s %9s %10s %9s %8s %10s %10s %10s %10s%n",
+                "kind", "ok", "ok/sec", "noStock", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        long totalOk = 0;
+        long totalErrors = 0;
+        for (Kind kind : Kind.values()) {
+            KindStats s = stats.get(kind);
+            if (s.latency.count() == 0) {
+                continue;
+            }
+            totalOk += s.ok.sum();
+            totalErrors += s.errors.sum();
+            System.out.printf("%-8s %9d %10.1f %9d %8d %10.2f %10.2f %10.2f %10.2f%n", kind.name().toLowerCase(),
+                    s.ok.sum(), s.ok.sum() / (elapsedNanos / 1e9), s.outOfStock.sum(), s.errors.sum(),
+                    s.latency.percentileNanos(50) / 1e6, s.latency.percentileNanos(99) / 1e6,
+                    s.latency.percentileNanos(99.9) / 1e6, s.latency.maxNanos() / 1e6);
+        }
+        System.out.printf("Throughput %.1f sales/sec, error rate %.3f%%, rollbacks %d (%.3f%%), retries %d%n",
+                totalOk / (elapsedNanos / 1e9), issued == 0 ? 0.0 : 100.0 * totalErrors / issued,
+                rollbacks, issued == 0 ? 0.0 : 100.0 * rollbacks / issued, retries);
+        System.out.println("Pool: " + GroceryManagementApp.getPoolStats());
+    }
+
+    /** Expands "cash:60,credit:30,basket:10" into a 100-slot lookup table for constant-time picks. */
+    static Kind[] parseMix(String mix) {
+        List<Kind> table = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.split(":");
+            Kind kind = Kind.valueOf(kv[0].trim().toUpperCase());
+            int weight = Integer.parseInt(kv[1].trim());
+            for (int i = 0; i < weight; i++) {
+                table.add(kind);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Empty request mix: " + mix);
+        }
+        return table.toArray(new Kind[0]);
+    }
+
+    private static Map<String, String> parseHeader(String line) throws IOException {
+        if (line == null || !line.startsWith(SESSION_HEADER)) {
+            throw new IOException("Not a checkout session file (missing '" + SESSION_HEADER + "' header)");
+        }
+        Map<String, String> header = new HashMap<>();
+        for (String token : line.substring(SESSION_HEADER.length()).trim().split("\\s+")) {
+            int eq = token.indexOf('=');
+            if (eq > 0) {
+                header.put(token.substring(0, eq), token.substring(eq + 1));
+            }
+        }
+        return header;
+    }
+
+    // --- Seeding ---
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement stmt, int index) throws SQLException;
+    }
+
+    /** Inserts count rows in batched transactions of 1000 and returns their generated keys in order. */
+    private static int[] insertAll(String sql, int count, RowBinder binder) throws SQLException {
+        int[] ids = new int[count];
+        int done = 0;
+        try (Connection conn = GroceryManagementApp.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                while (done < count) {
+                    int end = Math.min(count, done + 1_000);
+                    for (int i = done; i < end; i++) {
+                        binder.bind(stmt, i);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        for (int i = done; i < end && keys.next(); i++) {
+                            ids[i] = keys.getInt(1);
+                        }
+                    }
+                    conn.commit();
+                    done = end;
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return ids;
+    }
+
+    private static int[] seedVendors(int count) throws SQLException {
+        return insertAll("INSERT INTO Vendors (name, phone, email, address) VALUES (?, '0', 'load@example.com', '-')",
+                count, (stmt, i) -> stmt.setString(1, "load vendor " + i));
+    }
+
+    private static int[] seedProducts(int count, int[] vendorIds, int stock) throws SQLException {
+        SplittableRandom random = new SplittableRandom(7);
+        return insertAll("INSERT INTO Products (name, vendor_id, price, quantity) VALUES (?, ?, ?, ?)", count, (stmt, i) -> {
+            stmt.setString(1, "load product " + i);
+            stmt.setInt(2, vendorIds[i % vendorIds.length]);
+            stmt.setDouble(3, (50 + random.nextInt(2_000)) / 100.0);
+            stmt.setInt(4, stock);
+        });
+    }
+
+    private static int[] seedCustomers(int count) throws SQLException {
+        int[] ids = insertAll("INSERT INTO Customers (first_name, last_name, email, phone, address)"
+                + " VALUES ('load', ?, 'load@example.com', '0', '-')", count, (stmt, i) -> stmt.setString(1, "customer " + i));
+        insertAll("INSERT INTO Credit (customer_id, credit) VALUES (?, 0)", count, (stmt, i) -> stmt.setInt(1, ids[i]));
+        insertAll("INSERT INTO Rewards (customer_id, points) VALUES (?, 0)", count, (stmt, i) -> stmt.setInt(1, ids[i]));
+        return ids;
+    }
+}
@@ -0,0 +1,550 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A small bounded JDBC connection pool that sits behind GroceryManagementApp.getConnection().
+ * Connections are opened once through DriverManager and handed out as proxies whose close()
+ * returns the physical connection to the pool instead of tearing down the socket.
+ * Each physical connection also keeps an LRU cache of its prepared statements keyed by SQL text,
+ * so the app's constant queries are prepared once per connection rather than once per call.
+ * Works against any JDBC URL, so it can be pointed at an embedded database for testing.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    // Connections used more recently than this are handed out without an isValid() round trip.
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 5_000;
+
+    // Idle connections are reused LIFO so the hottest connection stays warm.
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // --- Statistics ---
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize) {
+        this(url, user, password, minSize, maxSize, 30_000, 600_000, 60_000, 32);
+    }
+
+    /**
+     * Creates a pool. No connection is opened here; the minimum size is filled lazily by the
+     * housekeeping thread so that constructing the pool never fails when the database is down.
+     * A leakThresholdMillis of 0 disables leak detection (and borrow-site capture), and a
+     * statementCacheSize of 0 disables the per-connection statement cache.
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                0, HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout when all maxSize connections are in use.
+     * The caller must close() the returned connection to give it back.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a pooled connection (" + getStats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection.", e);
+        }
+        waitNanos.add(System.nanoTime() - start);
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) {
+                    break;
+                }
+                validationFailures.increment();
+                destroy(pc);
+            }
+            if (pc == null) {
+                pc = create();
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowSite = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pc.leakReported = false;
+            borrowed.add(pc);
+            borrowCount.increment();
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Validation on borrow, skipped for connections that were in use a moment ago. */
+    private boolean isUsable(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pc.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        created.increment();
+        return new PooledConnection(raw);
+    }
+
+    private void destroy(PooledConnection pc) {
+        totalConnections.decrementAndGet();
+        destroyed.increment();
+        try {
+            pc.raw.close();
+        } catch (SQLException e) {
+            // The connection is being discarded anyway.
+        }
+    }
+
+    /** Called when a borrower closes its handle. Resets session state before pooling the connection again. */
+    private void release(PooledConnection pc) {
+        borrowed.remove(pc);
+        boolean reusable = !closed;
+        if (reusable) {
+            try {
+                if (pc.raw.isClosed()) {
+                    reusable = false;
+                } else {
+                    if (!pc.raw.getAutoCommit()) {
+                        pc.raw.rollback(); // discard anything the borrower left uncommitted
+                        pc.raw.setAutoCommit(true);
+                    }
+                    pc.raw.clearWarnings();
+                }
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+        if (reusable) {
+            pc.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pc);
+        } else {
+            destroy(pc);
+        }
+        permits.release();
+    }
+
+    /** Evicts long-idle connections, tops the pool up to minSize and reports suspected leaks. */
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Oldest idle connections sit at the tail of the deque.
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections.get() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutMillis && idle.remove(pc)) {
+                    destroy(pc);
+                }
+            }
+
+            while (!closed && totalConnections.get() < minSize && permits.tryAcquire()) {
+                try {
+                    PooledConnection pc = create();
+                    pc.lastUsed = now;
+                    idle.offerLast(pc);
+                } catch (SQLException e) {
+                    break; // database unreachable; try again on the next run
+                } finally {
+                    permits.release();
+                }
+            }
+
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis) {
+                        pc.leakReported = true;
+                        leaksDetected.increment();
+                        System.err.println("Possible connection leak: connection held for "
+                                + (now - pc.borrowedAt) + " ms.");
+                        if (pc.borrowSite != null) {
+                            pc.borrowSite.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Connection pool housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    /** Closes idle connections and stops housekeeping. Borrowed connections are closed as they are returned. */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+    }
+
+    /** Number of connections currently borrowed; cheaper than getStats() for routing decisions. */
+    public int activeCount() {
+        return borrowed.size();
+    }
+
+    public Stats getStats() {
+        int active = borrowed.size();
+        return new Stats(active, idle.size(), totalConnections.get(), maxSize,
+                permits.getQueueLength(), borrowCount.sum(), waitNanos.sum(), timeouts.sum(),
+                created.sum(), destroyed.sum(), validationFailures.sum(), leaksDetected.sum(),
+                statementCacheHits.sum(), statementCacheMisses.sum(), statementCacheEvictions.sum());
+    }
+
+    /** Point-in-time snapshot of pool counters. */
+    public static final class Stats {
+        public final int active;
+        public final int idle;
+        public final int total;
+        public final int maxSize;
+        public final int waitingThreads;
+        public final long borrows;
+        public final long totalWaitNanos;
+        public final long timeouts;
+        public final long created;
+        public final long destroyed;
+        public final long validationFailures;
+        public final long leaksDetected;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+        public final long statementCacheEvictions;
+
+        Stats(int active, int idle, int total, int maxSize, int waitingThreads, long borrows,
+              long totalWaitNanos, long timeouts, long created, long destroyed,
+              long validationFailures, long leaksDetected,
+              long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.maxSize = maxSize;
+            this.waitingThreads = waitingThreads;
+            this.borrows = borrows;
+            this.totalWaitNanos = totalWaitNanos;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.validationFailures = validationFailures;
+            this.leaksDetected = leaksDetected;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        public double averageWaitMillis() {
+            return borrows == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("active=%d, idle=%d, total=%d/%d, waiting=%d, borrows=%d, avgWait=%.3fms, "
+                            + "timeouts=%d, created=%d, destroyed=%d, validationFailures=%d, leaks=%d, "
+                            + "stmtCacheHits=%d, stmtCacheMisses=%d, stmtCacheEvictions=%d",
+                    active, idle, total, maxSize, waitingThreads, borrows, averageWaitMillis(),
+                    timeouts, created, destroyed, validationFailures, leaksDetected,
+                    statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+
+    /** A physical connection plus the bookkeeping the pool needs for it. */
+    private final class PooledConnection {
+        final Connection raw;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+        // Only touched by the thread that currently holds the connection.
+        private final LinkedHashMap<String, CachedStatement> statements;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    statementCacheEvictions.increment();
+                    eldest.getValue().evict();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Returns the cached statement for this SQL text, preparing it on a miss. If the cached
+         * statement is still open in the caller (the same SQL prepared twice at once), a plain
+         * uncached statement is returned instead.
+         */
+        PreparedStatement prepareCached(Connection handle, String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null) {
+                if (cached.inUse) {
+                    return raw.prepareStatement(sql);
+                }
+                statementCacheHits.increment();
+            } else {
+                statementCacheMisses.increment();
+                cached = new CachedStatement(raw.prepareStatement(sql));
+                statements.put(sql, cached);
+            }
+            return cached.checkOut(handle);
+        }
+
+        /**
+         * Each borrow gets its own proxy, so a stale reference closed twice (or used after close)
+         * cannot return or touch a connection that now belongs to someone else.
+         */
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean handleClosed;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!handleClosed) {
+                        handleClosed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return handleClosed || pc.raw.isClosed();
+                case "prepareStatement":
+                    if (!handleClosed && statementCacheSize > 0 && args.length == 1) {
+                        return pc.prepareCached((Connection) proxy, (String) args[0]);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.raw + "]";
+                default:
+                    break;
+            }
+            if (handleClosed) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A physical prepared statement owned by the cache. Borrowers get a proxy whose close()
+     * only clears parameters, so try-with-resources code keeps working unchanged.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+        private final PreparedStatement raw;
+        private Connection handle;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement raw) {
+            this.raw = raw;
+        }
+
+        PreparedStatement checkOut(Connection handle) {
+            this.handle = handle;
+            this.inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        /** Closes the physical statement now, or when the current borrower is done with it. */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                raw.close();
+            } catch (SQLException e) {
+                // The statement is being discarded anyway.
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        inUse = false;
+                        handle = null;
+                        if (evicted) {
+                            closeQuietly();
+                        } else {
+                            raw.clearParameters();
+                            raw.clearBatch();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || raw.isClosed();
+                case "getConnection":
+                    return handle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + raw + "]";
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("Statement has already been closed.");
+            }
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // --- DataSource boilerplate ---
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for its configured user.");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,211 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the unexpired coupons, for redeeming a coupon code during a sale without
+ * touching the Coupons table. Codes map to their coupon in a hash table; the Coupons table is read
+ * once, on first use, and afterwards kept current by the application's own coupon write paths.
+ *
+ * Expiry is handled by a timing wheel of WHEEL_DAYS daily slots keyed on expiration_date: a coupon
+ * sits in the slot for the day after it expires, and when the clock reaches that day only that slot
+ * is visited. Each coupon is therefore looked at about once per wheel turn, lookups never scan, and
+ * lookups also check the date themselves, so an expired coupon is never returned even between ticks.
+ * If several coupons share a code, the most recently loaded or written one wins.
+ */
+public final class CouponIndex {
+
+    private static final int WHEEL_DAYS = 512; // power of two
+    private static final String SELECT_ALL_SQL =
+            "SELECT coupon_id, code, discount, expiration_date FROM Coupons WHERE expiration_date >= ?";
+    private static final String SELECT_ONE_SQL =
+            "SELECT coupon_id, code, discount, expiration_date FROM Coupons WHERE coupon_id = ?";
+    private static final String SELECT_VALID_ON_SQL =
+            "SELECT coupon_id, code, discount, expiration_date FROM Coupons WHERE code = ? AND expiration_date >= ?"
+                    + " ORDER BY coupon_id DESC LIMIT 1";
+
+    /** An indexed coupon. Immutable; an update replaces the whole entry. */
+    public static final class Coupon {
+        public final int couponId;
+        public final String code;
+        public final double discount;
+        final long expiresEpochDay;
+
+        Coupon(int couponId, String code, double discount, long expiresEpochDay) {
+            this.couponId = couponId;
+            this.code = code;
+            this.discount = discount;
+            this.expiresEpochDay = expiresEpochDay;
+        }
+
+        public LocalDate expirationDate() {
+            return LocalDate.ofEpochDay(expiresEpochDay);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Coupon> byCode = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Coupon> byId = new ConcurrentHashMap<>();
+
+    // Guarded by this. Slots hold possibly stale entries; a visit drops any that are no longer indexed.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final List<Coupon>[] wheel = new List[WHEEL_DAYS];
+    private long currentDay = LocalDate.now().toEpochDay();
+    private volatile boolean loaded;
+    private long evictions;
+
+    public CouponIndex() {
+        for (int i = 0; i < WHEEL_DAYS; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Returns the valid coupon for the code, or null if there is none or it has expired.
+     * Loads the index from the database on first use.
+     */
+    public Coupon lookup(DataSource dataSource, String code) throws SQLException {
+        if (!loaded) {
+            load(dataSource);
+        }
+        Coupon coupon = byCode.get(code);
+        if (coupon == null) {
+            return null;
+        }
+        long today = LocalDate.now().toEpochDay();
+        if (today > currentDay) {
+            advance(today);
+        }
+        return coupon.expiresEpochDay >= today ? coupon : null;
+    }
+
+    /**
+     * Returns the coupon for the code as it stood on the given day (not expired by then), or null. A
+     * coupon valid today was valid on any earlier day too; one that has expired since is no longer in
+     * the index, so for a past day the Coupons table is asked. Used to honour a coupon on a sale taken
+     * offline, whatever has expired by the time it is replayed.
+     */
+    public Coupon lookupOn(DataSource dataSource, String code, LocalDate day) throws SQLException {
+        Coupon coupon = lookup(dataSource, code);
+        if (coupon != null || !day.isBefore(LocalDate.now())) {
+            return coupon;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_VALID_ON_SQL)) {
+            stmt.setString(1, code);
+            stmt.setDate(2, java.sql.Date.valueOf(day));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    /** Loads the index now instead of on the first lookup, e.g. while the database is known to be up. */
+    public void preload(DataSource dataSource) throws SQLException {
+        if (!loaded) {
+            load(dataSource);
+        }
+    }
+
+    private synchronized void load(DataSource dataSource) throws SQLException {
+        if (loaded) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_SQL)) {
+            stmt.setDate(1, java.sql.Date.valueOf(LocalDate.ofEpochDay(currentDay)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    index(read(rs));
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    private static Coupon read(ResultSet rs) throws SQLException {
+        return new Coupon(rs.getInt(1), rs.getString(2), rs.getDouble(3), rs.getDate(4).toLocalDate().toEpochDay());
+    }
+
+    /** Adds or replaces an entry; an already expired coupon is only removed. Caller holds the lock. */
+    private void index(Coupon coupon) {
+        Coupon previous = byId.remove(coupon.couponId);
+        if (previous != null) {
+            byCode.remove(previous.code, previous);
+        }
+        if (coupon.expiresEpochDay < currentDay) {
+            return;
+        }
+        byId.put(coupon.couponId, coupon);
+        byCode.put(coupon.code, coupon);
+        wheel[(int) ((coupon.expiresEpochDay + 1) & (WHEEL_DAYS - 1))].add(coupon);
+    }
+
+    /** Turns the wheel to today, evicting whatever expired in the slots passed over. */
+    private synchronized void advance(long today) {
+        if (today <= currentDay) {
+            return;
+        }
+        // A jump of a full turn or more visits every slot once.
+        long from = Math.max(currentDay + 1, today - WHEEL_DAYS + 1);
+        currentDay = today;
+        for (long day = from; day <= today; day++) {
+            Iterator<Coupon> it = wheel[(int) (day & (WHEEL_DAYS - 1))].iterator();
+            while (it.hasNext()) {
+                Coupon coupon = it.next();
+                boolean current = byId.get(coupon.couponId) == coupon;
+                if (!current || coupon.expiresEpochDay < today) {
+                    it.remove();
+                    if (current) {
+                        byId.remove(coupon.couponId, coupon);
+                        byCode.remove(coupon.code, coupon);
+                        evictions++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-reads one coupon after the application inserted or changed it, using the caller's connection.
+     * A no-op before the first load, which will read it anyway.
+     */
+    public synchronized void refresh(Connection conn, int couponId) throws SQLException {
+        if (!loaded) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_ONE_SQL)) {
+            stmt.setInt(1, couponId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    index(read(rs));
+                } else {
+                    removed(couponId);
+                }
+            }
+        }
+    }
+
+    /** Drops a coupon deleted by the application. */
+    public synchronized void removed(int couponId) {
+        Coupon previous = byId.remove(couponId);
+        if (previous != null) {
+            byCode.remove(previous.code, previous);
+        }
+    }
+
+    public int size() {
+        return byCode.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("loaded=%b, coupons=%d, evictions=%d", loaded, byCode.size(), evictions);
+    }
+}
@@ -0,0 +1,143 @@
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous facade over GroceryManagementApp for embedding the app in a service.
+ * Each call runs the blocking JDBC operation on its own virtual thread (when the JVM has them)
+ * and returns a CompletableFuture that completes with the result or the SQLException.
+ * At most maxInFlight operations run at once -- by default the connection pool size -- and further
+ * callers block in the submitting method, so load turns into backpressure at the edge instead of a
+ * growing crowd of threads parked on the pool's borrow timeout.
+ */
+public class GroceryAsync implements AutoCloseable {
+
+    @FunctionalInterface
+    interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    /** Virtual-thread executor limited to the connection pool's maximum size. */
+    public GroceryAsync() {
+        this(newVirtualThreadExecutor(), GroceryManagementApp.getPoolStats().maxSize);
+    }
+
+    public GroceryAsync(ExecutorService executor, int maxInFlight) {
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Returns Executors.newVirtualThreadPerTaskExecutor() on JDK 21+, looked up reflectively so the
+     * app still compiles and runs on older JDKs, where it falls back to a cached platform-thread pool
+     * (the in-flight limit keeps that pool bounded as well).
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "grocery-async");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public CompletableFuture<Void> makeTransactionAsync(int customerId, int productId, String transactionType, int quantity) {
+        return submit(() -> {
+            GroceryManagementApp.executeSale(customerId, productId, transactionType, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> makeBasketTransactionAsync(int customerId, List<GroceryManagementApp.BasketLine> lines,
+                                                              String transactionType) {
+        return submit(() -> {
+            GroceryManagementApp.executeBasketSale(customerId, lines, transactionType);
+            return null;
+        });
+    }
+
+    /** Completes with the new customer_id. */
+    public CompletableFuture<Integer> addCustomerAsync(String firstName, String lastName, String email,
+                                                       String phone, String address) {
+        return submit(() -> GroceryManagementApp.insertCustomer(firstName, lastName, email, phone, address));
+    }
+
+    public CompletableFuture<Void> updateRewardsAsync(int customerId, int points) {
+        return submit(() -> {
+            GroceryManagementApp.addRewardPoints(customerId, points);
+            return null;
+        });
+    }
+
+    <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            inFlight.acquire(); // backpressure: wait here rather than on the connection pool
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+        try {
+            executor.execute(() -> {
+                T value = null;
+                Exception failure = null;
+                try {
+                    value = call.call();
+                } catch (SQLException | RuntimeException e) {
+                    failure = e;
+                } finally {
+                    // Release before completing, so dependent stages never run while holding a slot.
+                    inFlight.release();
+                }
+                if (failure == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /** Number of operations currently running. */
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /** Number of callers currently blocked waiting for an in-flight slot. */
+    public int waiting() {
+        return inFlight.getQueueLength();
+    }
+
+    /** Stops accepting work and waits for running operations to finish. */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting; operations are bounded by the pool's borrow timeout
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
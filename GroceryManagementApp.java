@@ -1,5 +1,26 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
 
 /**
  * A Java Console Application for Grocery Management using JDBC.
@@ -10,164 +31,1406 @@ import java.util.Scanner;
 public class GroceryManagementApp {
 
     // --- Database Configuration (Matches the original Python connection) ---
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/grocery_management";
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "root";
+    // Each setting can be overridden with a -Dgrocery.* system property, e.g. to point at an embedded database.
+    // useServerPrepStmts makes the pool's statement cache save the server-side parse, not just the client one;
+    // rewriteBatchedStatements turns JDBC batches into multi-row statements (one round trip per batch);
+    // useCursorFetch makes a positive fetch size stream through a server-side cursor.
+    private static final String DB_URL = System.getProperty("grocery.db.url",
+            "jdbc:mysql://localhost:3306/grocery_management?useServerPrepStmts=true&rewriteBatchedStatements=true"
+                    + "&useCursorFetch=true");
+    private static final String DB_USER = System.getProperty("grocery.db.user", "root");
+    private static final String DB_PASSWORD = System.getProperty("grocery.db.password", "root");
 
-    private static Connection getConnection() throws SQLException {
-        // Register the JDBC driver (optional for modern JDBC versions but good practice)
-        // Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+    // --- Connection Pool Configuration ---
+    private static final int POOL_MIN_SIZE = Integer.getInteger("grocery.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("grocery.pool.maxSize", 10);
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("grocery.pool.borrowTimeoutMs", 30_000L);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("grocery.pool.idleTimeoutMs", 600_000L);
+    // Leak detection captures a stack trace on every borrow, so it is off (0) unless a threshold is set.
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("grocery.pool.leakThresholdMs", 0L);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("grocery.pool.statementCacheSize", 32);
+
+    private static final ConnectionPool POOL = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD,
+            POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_BORROW_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS,
+            STATEMENT_CACHE_SIZE);
+
+    // --- Read Replica Configuration ---
+    // Comma-separated JDBC URLs of read replicas, using the primary's user, password and pool settings.
+    // Reports, exports, history pages and sales summaries read from them (see ReplicaRouter); empty (the
+    // default) keeps every read on the primary. Selection is roundRobin or leastLoaded. MySQL replica URLs
+    // get every driver option of the primary URL they do not set themselves (useCursorFetch above all, or
+    // the streaming reads would buffer whole result sets). An empty lag query treats replicas as never
+    // stale, e.g. to try it locally against two embedded databases with ReplicaReadCheck.
+    private static final String REPLICA_URLS = System.getProperty("grocery.db.replicaUrls", "");
+    private static final String REPLICA_SELECTION = System.getProperty("grocery.db.replicaSelection", "roundRobin");
+    private static final long REPLICA_MAX_LAG_MS = Long.getLong("grocery.db.replicaMaxLagMs", 5_000L);
+    private static final long REPLICA_CHECK_INTERVAL_MS = Long.getLong("grocery.db.replicaCheckIntervalMs", 1_000L);
+    private static final String REPLICA_LAG_QUERY =
+            System.getProperty("grocery.db.replicaLagQuery", ReplicaRouter.MYSQL_LAG_QUERY);
+
+    private static final ReplicaRouter REPLICAS = newReplicaRouter();
+
+    private static ReplicaRouter newReplicaRouter() {
+        List<String> urls = new ArrayList<>();
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String url : REPLICA_URLS.split(",")) {
+            if (!url.isBlank()) {
+                urls.add(url.trim());
+                pools.add(new ConnectionPool(replicaUrl(url.trim()), DB_USER, DB_PASSWORD, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                        POOL_BORROW_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, STATEMENT_CACHE_SIZE));
+            }
+        }
+        ReplicaRouter.Selection selection = REPLICA_SELECTION.equalsIgnoreCase("leastLoaded")
+                ? ReplicaRouter.Selection.LEAST_LOADED : ReplicaRouter.Selection.ROUND_ROBIN;
+        return new ReplicaRouter(POOL, urls, pools, selection, REPLICA_MAX_LAG_MS, REPLICA_LAG_QUERY,
+                REPLICA_CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * The URL a replica pool connects with: for MySQL, the given URL plus each query option of the primary
+     * URL it does not set itself; other URLs (e.g. embedded databases) are used as given.
+     */
+    static String replicaUrl(String url) {
+        int primaryQuery = DB_URL.indexOf('?');
+        if (!url.startsWith("jdbc:mysql:") || !DB_URL.startsWith("jdbc:mysql:") || primaryQuery < 0) {
+            return url;
+        }
+        int query = url.indexOf('?');
+        Map<String, String> options = new LinkedHashMap<>();
+        if (query >= 0) {
+            for (String option : url.substring(query + 1).split("&")) {
+                options.put(option.split("=", 2)[0], option);
+            }
+        }
+        StringBuilder result = new StringBuilder(url);
+        for (String option : DB_URL.substring(primaryQuery + 1).split("&")) {
+            if (!option.isEmpty() && options.putIfAbsent(option.split("=", 2)[0], option) == null) {
+                result.append(result.indexOf("?") < 0 ? '?' : '&').append(option);
+            }
+        }
+        return result.toString();
+    }
+
+    /** The replica URLs as the replica pools use them (see replicaUrl). */
+    static List<String> getReplicaUrls() {
+        List<String> urls = new ArrayList<>();
+        for (String url : REPLICA_URLS.split(",")) {
+            if (!url.isBlank()) {
+                urls.add(replicaUrl(url.trim()));
+            }
+        }
+        return urls;
+    }
+
+    /** Reads served by the primary so far, because no replica is configured or none was usable. */
+    static long getPrimaryReadCount() {
+        return REPLICAS.primaryReads();
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing it returns it to the pool rather than
+     * closing the underlying socket, so callers keep using try-with-resources as before.
+     */
+    static Connection getConnection() throws SQLException {
+        return POOL.getConnection();
+    }
+
+    /**
+     * Borrows a connection for read-only work that tolerates replication lag up to grocery.db.replicaMaxLagMs:
+     * from a replica when one is configured and usable, otherwise from the primary pool.
+     */
+    static Connection getReadConnection() throws SQLException {
+        return REPLICAS.getReadConnection();
+    }
+
+    /** Returns the read routing counters and each replica's state and lag. */
+    public static String getReplicaStats() {
+        return REPLICAS.toString();
+    }
+
+    /** The pool itself, for in-package tools that run their own transactions (importers, exporters, load tools). */
+    static DataSource getDataSource() {
+        return POOL;
+    }
+
+    /** Returns a snapshot of the connection pool counters (active, idle, wait time, timeouts, statement cache hits, ...). */
+    public static ConnectionPool.Stats getPoolStats() {
+        return POOL.getStats();
+    }
+
+    // --- Product Cache Configuration ---
+    // Prices and names only change through updateProduct/deleteProduct, which invalidate the cache;
+    // the TTL bounds staleness for edits made outside this application.
+    private static final int PRODUCT_CACHE_MAX_ENTRIES = Integer.getInteger("grocery.productCache.maxEntries", 10_000);
+    private static final long PRODUCT_CACHE_TTL_MS = Long.getLong("grocery.productCache.ttlMs", 300_000L);
+
+    private static final ProductCache PRODUCT_CACHE = new ProductCache(PRODUCT_CACHE_MAX_ENTRIES, PRODUCT_CACHE_TTL_MS);
+
+    // --- Coupon Index ---
+    // Sales redeem coupon codes against this in-memory index (loaded on first use, then kept current by
+    // addCoupon/updateCoupon/deleteCoupon); expired coupons drop out on their own. See CouponIndex.
+    private static final CouponIndex COUPON_INDEX = new CouponIndex();
+
+    /** Returns the coupon index counters (loaded, coupons, evictions). */
+    public static String getCouponIndexStats() {
+        return COUPON_INDEX.toString();
+    }
+
+    // --- Inventory Snapshot ---
+    // Quantity, price and vendor of every product in primitive arrays (see InventorySnapshot), streamed
+    // from Products on first use and then kept current by the sale, addProduct, update, purge and import paths,
+    // so low-stock and stock-value reports are in-memory scans instead of full table reads.
+    private static final int INVENTORY_FETCH_SIZE = Integer.getInteger("grocery.inventory.fetchSize", 10_000);
+    private static final int LOW_STOCK_THRESHOLD = Integer.getInteger("grocery.inventory.lowStockThreshold", 10);
+
+    private static final InventorySnapshot INVENTORY = new InventorySnapshot(INVENTORY_FETCH_SIZE);
+
+    /** The snapshot, streamed from the primary the first time it is needed. */
+    private static InventorySnapshot inventory() throws SQLException {
+        if (!INVENTORY.isLoaded()) {
+            synchronized (INVENTORY) {
+                if (!INVENTORY.isLoaded()) {
+                    try (Connection conn = getConnection()) {
+                        INVENTORY.reload(conn);
+                    }
+                }
+            }
+        }
+        return INVENTORY;
+    }
+
+    /** Re-streams the snapshot from Products, e.g. after stock was edited outside this application. */
+    public static void reloadInventory() throws SQLException {
+        synchronized (INVENTORY) {
+            try (Connection conn = getConnection()) {
+                INVENTORY.reload(conn);
+            }
+        }
+    }
+
+    /** Re-streams a loaded snapshot after products were bulk-inserted (BulkImporter); a no-op until first use. */
+    static void productsImported() throws SQLException {
+        if (INVENTORY.isLoaded()) {
+            reloadInventory();
+        }
+    }
+
+    /** Ids of the products with fewer than threshold units in stock, in id order. */
+    public static int[] getLowStockProducts(int threshold) throws SQLException {
+        return inventory().lowStock(threshold);
+    }
+
+    /** Value of all stock on hand (quantity times price) in cents. */
+    public static long getStockValueCents() throws SQLException {
+        return inventory().stockValueCents();
+    }
+
+    /** Products, units, stock value and low-stock count per vendor id; see InventorySnapshot.VendorTotals. */
+    public static InventorySnapshot.VendorTotals getVendorTotals(int threshold) throws SQLException {
+        return inventory().vendorTotals(threshold);
+    }
+
+    /** Returns the inventory snapshot counters (loaded, products, highest vendor id). */
+    public static String getInventoryStats() {
+        return INVENTORY.toString();
+    }
+
+    /** Brings the snapshot in line with a committed sale (also called for journaled sales on replay). */
+    static void saleCommitted(Sale sale) {
+        INVENTORY.adjustQuantity(sale.productId, -sale.quantity);
+    }
+
+    /** Price in whole cents, rounded half up like the DECIMAL(10,2) column. */
+    private static long toCents(BigDecimal price) {
+        return price.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+    }
+
+    /** Returns the product cache counters (size, hits, misses, hit rate, evictions, ...). */
+    public static String getProductCacheStats() {
+        return PRODUCT_CACHE.toString();
+    }
+
+    // --- Group Commit Configuration ---
+    // A batch size of 0 (the default) keeps the classic one-transaction-per-sale path.
+    private static final int GROUP_COMMIT_BATCH_SIZE = Integer.getInteger("grocery.groupCommit.batchSize", 0);
+    private static final long GROUP_COMMIT_MAX_WAIT_MICROS = Long.getLong("grocery.groupCommit.maxWaitMicros", 500L);
+
+    private static volatile GroupCommitter<Sale> groupCommitter;
+
+    static {
+        if (GROUP_COMMIT_BATCH_SIZE > 0) {
+            enableGroupCommit(GROUP_COMMIT_BATCH_SIZE, GROUP_COMMIT_MAX_WAIT_MICROS);
+        }
+    }
+
+    /**
+     * Routes makeTransaction through a group committer: concurrent sales are queued and up to
+     * maxBatchSize of them (or whatever arrives within maxWaitMicros) share one database commit.
+     */
+    public static synchronized void enableGroupCommit(int maxBatchSize, long maxWaitMicros) {
+        disableGroupCommit();
+        groupCommitter = new GroupCommitter<>(POOL, new SaleBatchHandler(), maxBatchSize, maxWaitMicros);
+    }
+
+    /** Flushes any queued sales and returns makeTransaction to one commit per sale. */
+    public static synchronized void disableGroupCommit() {
+        GroupCommitter<Sale> committer = groupCommitter;
+        groupCommitter = null;
+        if (committer != null) {
+            committer.close();
+        }
+    }
+
+    // --- Rewards Write-Behind Configuration ---
+    // A flush interval of 0 (the default) writes every updateRewards call straight through.
+    private static final long REWARDS_FLUSH_INTERVAL_MS = Long.getLong("grocery.rewards.flushIntervalMs", 0L);
+    private static final long REWARDS_FLUSH_THRESHOLD = Long.getLong("grocery.rewards.flushThreshold", 5_000L);
+
+    private static volatile RewardsWriteBehind rewardsBuffer;
+    private static Thread rewardsShutdownHook; // guarded by the class lock, like the enable/disable calls
+
+    static {
+        if (REWARDS_FLUSH_INTERVAL_MS > 0) {
+            enableRewardsWriteBehind(REWARDS_FLUSH_INTERVAL_MS, REWARDS_FLUSH_THRESHOLD);
+        }
+    }
+
+    /**
+     * Buffers rewards increments and writes the per-customer net change as one batched UPDATE every
+     * flushIntervalMillis, or as soon as flushThreshold increments are waiting. Buffered points are
+     * flushed by disableRewardsWriteBehind() and, as a last resort, by a JVM shutdown hook.
+     */
+    public static synchronized void enableRewardsWriteBehind(long flushIntervalMillis, long flushThreshold) {
+        disableRewardsWriteBehind();
+        RewardsWriteBehind buffer = new RewardsWriteBehind(POOL, flushIntervalMillis, flushThreshold);
+        rewardsBuffer = buffer;
+        rewardsShutdownHook = new Thread(buffer::close, "rewards-final-flush");
+        Runtime.getRuntime().addShutdownHook(rewardsShutdownHook);
+    }
+
+    /** Flushes buffered rewards points and returns updateRewards to one UPDATE per call. */
+    public static synchronized void disableRewardsWriteBehind() {
+        RewardsWriteBehind buffer = rewardsBuffer;
+        rewardsBuffer = null;
+        removeShutdownHook(rewardsShutdownHook);
+        rewardsShutdownHook = null;
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    /** Unregisters a hook added by an enable* method, so a disabled component is not kept reachable. */
+    private static void removeShutdownHook(Thread hook) {
+        if (hook == null) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down and the hook is running or about to; closing twice is harmless.
+        }
+    }
+
+    /** Returns the write-behind counters (pending increments and customers, flushes, ...), or null when it is off. */
+    public static String getRewardsBufferStats() {
+        RewardsWriteBehind buffer = rewardsBuffer;
+        return buffer == null ? null : buffer.toString();
+    }
+
+    // --- Background Purge Configuration ---
+    // deleteCustomer and deleteProduct remove the dependent rows chunkSize at a time, one short transaction
+    // per chunk with a pause in between, and the parent row last (see PurgeWorker), instead of one
+    // cascading DELETE that can block checkout for seconds.
+    private static final int PURGE_CHUNK_SIZE = Integer.getInteger("grocery.purge.chunkSize", 500);
+    private static final long PURGE_PAUSE_MS = Long.getLong("grocery.purge.pauseMs", 20L);
+
+    private static final PurgeWorker PURGE_WORKER =
+            new PurgeWorker(POOL, PURGE_CHUNK_SIZE, PURGE_PAUSE_MS, productId -> {
+                PRODUCT_CACHE.invalidate(productId);
+                INVENTORY.remove(productId);
+            });
+
+    /**
+     * Deletes a customer with its transactions, rewards and credit in the background. The future
+     * completes with the number of rows deleted; getPurgeProgress() reports progress meanwhile.
+     * From the moment this returns, sales to the customer fail ("is being deleted").
+     */
+    public static CompletableFuture<Long> purgeCustomer(int customerId) throws SQLException {
+        return PURGE_WORKER.purge(PurgeWorker.Entity.CUSTOMER, customerId);
+    }
+
+    /** Deletes a product with its transactions in the background; see purgeCustomer. */
+    public static CompletableFuture<Long> purgeProduct(int productId) throws SQLException {
+        return PURGE_WORKER.purge(PurgeWorker.Entity.PRODUCT, productId);
+    }
+
+    /** Restarts purges interrupted by a shutdown or crash; returns how many were resumed. */
+    public static int resumePurges() throws SQLException {
+        return PURGE_WORKER.resumePending();
+    }
+
+    /** Returns the purges queued or running, with the rows each has deleted so far. */
+    public static String getPurgeProgress() {
+        return PURGE_WORKER.toString();
+    }
+
+    // --- Offline Journal Configuration ---
+    // With a journal path set, sales that cannot reach the database are appended to a local durable
+    // journal and replayed in batches once it is back (see SalesJournal). Empty (the default) disables it.
+    private static final String JOURNAL_PATH = System.getProperty("grocery.journal.path", "");
+    private static final int JOURNAL_SIZE_MB = Integer.getInteger("grocery.journal.sizeMb", 64);
+    private static final int JOURNAL_REPLAY_BATCH = Integer.getInteger("grocery.journal.replayBatch", 500);
+    private static final long JOURNAL_REPLAY_INTERVAL_MS = Long.getLong("grocery.journal.replayIntervalMs", 1_000L);
+
+    private static volatile SalesJournal salesJournal;
+    private static Thread journalShutdownHook; // guarded by the class lock, like the enable/disable calls
+
+    static {
+        if (!JOURNAL_PATH.isEmpty()) {
+            try {
+                enableOfflineJournal(Paths.get(JOURNAL_PATH), JOURNAL_SIZE_MB, JOURNAL_REPLAY_BATCH, JOURNAL_REPLAY_INTERVAL_MS);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not open the offline sales journal " + JOURNAL_PATH + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lets makeTransaction keep selling while the database is unreachable: such sales are appended to
+     * the journal at path (sizeMb preallocated) and replayed replayBatch at a time by a background thread.
+     * The journal is a single memory mapping, so sizeMb must be between 1 and 2047.
+     */
+    public static synchronized void enableOfflineJournal(Path path, int sizeMb, int replayBatch, long replayIntervalMillis)
+            throws IOException {
+        long sizeBytes = (long) sizeMb << 20;
+        if (sizeMb < 1 || sizeBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid journal size: " + sizeMb + " MB (must be 1 to 2047).");
+        }
+        disableOfflineJournal();
+        SalesJournal journal = new SalesJournal(path, (int) sizeBytes, POOL, new SaleBatchHandler(), replayBatch,
+                replayIntervalMillis);
+        salesJournal = journal;
+        journalShutdownHook = new Thread(journal::close, "sales-journal-close");
+        Runtime.getRuntime().addShutdownHook(journalShutdownHook);
+        try {
+            // Offline sales need coupons from memory; whatever cannot be looked up now is resolved on replay.
+            COUPON_INDEX.preload(POOL);
+        } catch (SQLException e) {
+            System.err.println("Coupon index not loaded (" + e.getMessage()
+                    + "); coupons on offline sales will be checked when they are replayed.");
+        }
+    }
+
+    /** Makes a last replay attempt and closes the journal; unreplayed sales stay in the file for the next start. */
+    public static synchronized void disableOfflineJournal() {
+        SalesJournal journal = salesJournal;
+        salesJournal = null;
+        removeShutdownHook(journalShutdownHook);
+        journalShutdownHook = null;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /** Returns the journal counters (offline, pending, appended, replayed, rejected, ...), or null when it is off. */
+    public static String getOfflineJournalStats() {
+        SalesJournal journal = salesJournal;
+        return journal == null ? null : journal.toString();
+    }
+
+    // --- Metrics Configuration ---
+    // Every public operation records its latency in OperationMetrics (also exposed over JMX);
+    // a dump interval above 0 additionally prints the report to stderr periodically.
+    private static final long METRICS_DUMP_INTERVAL_MS = Long.getLong("grocery.metrics.dumpIntervalMs", 0L);
+
+    static {
+        if (METRICS_DUMP_INTERVAL_MS > 0) {
+            OperationMetrics.startPeriodicDump(METRICS_DUMP_INTERVAL_MS);
+        }
+    }
+
+    /** Returns the per-operation latency, error and rollback report. */
+    public static String getOperationMetrics() {
+        return OperationMetrics.report();
+    }
+
+    // --- Core Transaction Functions (Require Transactional Safety) ---
+
+    // The sale SQL is shared by the single-sale and batched paths, so the statement cache sees one string each.
+    // Every sale path takes row locks in the same order -- the PurgeJobs keys it checks (see
+    // PurgeWorker.purging), Products, then Credit, then the Transactions insert (which share-locks the
+    // parent rows), then the daily summary rows (see SalesAggregates) -- so concurrent tills cannot
+    // deadlock on each other.
+    // The stock decrement is conditional, so stock can never go negative.
+    // created_at is bound only for a sale replayed from the offline journal (its recorded sale time).
+    private static final String INSERT_TRANSACTION_SQL = "INSERT INTO Transactions (customer_id, product_id, transaction_type, quantity, created_at)"
+            + " VALUES (?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP))";
+    private static final String SELECT_PRICE_SQL = "SELECT price, name FROM Products WHERE product_id = ?";
+    private static final String UPDATE_CREDIT_SQL = "UPDATE Credit SET credit = credit + ? WHERE customer_id = ?";
+    private static final String UPDATE_QUANTITY_SQL = "UPDATE Products SET quantity = quantity - ? WHERE product_id = ? AND quantity >= ?";
+
+    /** A single sale as passed to makeTransaction; the unit of work for group commit. */
+    static final class Sale {
+        final int customerId;
+        final int productId;
+        final String transactionType;
+        final int quantity;
+        final double discount; // coupon discount taken off the credit charge, 0 if none
+        // Set only on a sale journaled before its coupon could be looked up; replay resolves it.
+        final String unresolvedCoupon;
+        // When the sale was made, for a sale read back from the offline journal; null means now.
+        final Timestamp soldAt;
+
+        Sale(int customerId, int productId, String transactionType, int quantity) {
+            this(customerId, productId, transactionType, quantity, 0.0);
+        }
+
+        Sale(int customerId, int productId, String transactionType, int quantity, double discount) {
+            this(customerId, productId, transactionType, quantity, discount, null);
+        }
+
+        Sale(int customerId, int productId, String transactionType, int quantity, double discount,
+             String unresolvedCoupon) {
+            this(customerId, productId, transactionType, quantity, discount, unresolvedCoupon, null);
+        }
+
+        Sale(int customerId, int productId, String transactionType, int quantity, double discount,
+             String unresolvedCoupon, Timestamp soldAt) {
+            this.customerId = customerId;
+            this.productId = productId;
+            this.transactionType = transactionType;
+            this.quantity = quantity;
+            this.discount = discount;
+            this.unresolvedCoupon = unresolvedCoupon;
+            this.soldAt = soldAt;
+        }
+
+        /**
+         * This sale with its journaled coupon code looked up as of the day it was made, so a coupon that
+         * has expired since is still honoured. A code that was not valid even then cannot fail a sale
+         * that has already happened: the sale goes through without a discount, and is reported.
+         */
+        Sale resolveCoupon() throws SQLException {
+            if (unresolvedCoupon == null) {
+                return this;
+            }
+            LocalDate day = soldAt == null ? LocalDate.now() : soldAt.toLocalDateTime().toLocalDate();
+            CouponIndex.Coupon coupon = COUPON_INDEX.lookupOn(POOL, unresolvedCoupon, day);
+            if (coupon == null) {
+                System.err.printf("Coupon code %s on a journaled sale (customer %d, product %d) was not valid on %s;"
+                        + " applying the sale without a discount.%n", unresolvedCoupon, customerId, productId, day);
+            }
+            return new Sale(customerId, productId, transactionType, quantity, coupon == null ? 0.0 : coupon.discount,
+                    null, soldAt);
+        }
+
+        boolean isCredit() {
+            return transactionType.equalsIgnoreCase("credit");
+        }
+
+        /** Amount charged to credit at the given unit price; a discount never makes it negative. */
+        double charge(double price) {
+            return Math.max(0.0, price * quantity - discount);
+        }
+    }
+
+    /**
+     * Updates the credit of a customer in the Credit table using an existing connection.
+     * This is a helper for makeTransaction and does not commit/close the connection.
+     */
+    private static void updateCustomerCredit(Connection conn, int customerId, double amount) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_CREDIT_SQL)) {
+            stmt.setDouble(1, amount);
+            stmt.setInt(2, customerId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Updates the quantity of a product in the Products table using an existing connection.
+     * Fails with an SQLDataException, leaving stock untouched, if fewer than quantity units are left.
+     * This is a helper for makeTransaction and does not commit/close the connection.
+     */
+    private static void updateProductQuantity(Connection conn, int productId, int quantity) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_QUANTITY_SQL)) {
+            stmt.setInt(1, quantity);
+            stmt.setInt(2, productId);
+            stmt.setInt(3, quantity);
+            if (stmt.executeUpdate() == 0) {
+                throw insufficientStock(productId);
+            }
+        }
+    }
+
+    private static SQLDataException insufficientStock(int productId) {
+        return new SQLDataException("Insufficient stock (or unknown product) for product ID " + productId + ".");
+    }
+
+    /**
+     * Looks up the price of a single product, from the product cache when possible and
+     * otherwise using the existing connection (which then populates the cache).
+     */
+    private static double lookupPrice(Connection conn, int productId) throws SQLException {
+        double cached = PRODUCT_CACHE.price(productId);
+        if (!Double.isNaN(cached)) {
+            return cached;
+        }
+        long generation = PRODUCT_CACHE.generation();
+        try (PreparedStatement priceStmt = conn.prepareStatement(SELECT_PRICE_SQL)) {
+            priceStmt.setInt(1, productId);
+            try (ResultSet rs = priceStmt.executeQuery()) {
+                if (rs.next()) {
+                    double price = rs.getDouble("price");
+                    PRODUCT_CACHE.put(productId, price, rs.getString("name"), generation);
+                    return price;
+                }
+                throw new SQLException("Product ID not found.");
+            }
+        }
+    }
+
+    /**
+     * Number of placeholders to use for a variable-length list of n values. Rounding up to a
+     * power of two (and padding with the last value) means only a handful of distinct SQL strings
+     * ever reach the statement cache.
+     */
+    private static int paddedSlots(int n) {
+        int slots = Integer.highestOneBit(n);
+        return slots < n ? slots << 1 : slots;
+    }
+
+    /** Returns "?, ?, ..., ?" with the given number of placeholders. */
+    static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up the prices of several products. Cached prices are used directly and the rest
+     * are read with a single IN (...) query, which also populates the cache.
+     * Products that do not exist are simply absent from the returned map.
+     */
+    static Map<Integer, Double> lookupPrices(Connection conn, int[] productIds) throws SQLException {
+        Map<Integer, Double> prices = new HashMap<>();
+        int[] missing = new int[productIds.length];
+        int missingCount = 0;
+        for (int productId : productIds) {
+            double cached = PRODUCT_CACHE.price(productId);
+            if (Double.isNaN(cached)) {
+                missing[missingCount++] = productId;
+            } else {
+                prices.put(productId, cached);
+            }
+        }
+        if (missingCount == 0) {
+            return prices;
+        }
+
+        long generation = PRODUCT_CACHE.generation();
+        int slots = paddedSlots(missingCount);
+        String query = "SELECT product_id, price, name FROM Products WHERE product_id IN (" + placeholders(slots) + ")";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            for (int i = 0; i < slots; i++) {
+                stmt.setInt(i + 1, missing[Math.min(i, missingCount - 1)]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int productId = rs.getInt(1);
+                    double price = rs.getDouble(2);
+                    prices.put(productId, price);
+                    PRODUCT_CACHE.put(productId, price, rs.getString(3), generation);
+                }
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * Applies one sale using an existing connection: decrements stock, charges the customer's
+     * credit for credit sales and records the transaction. Does not commit/close the connection.
+     */
+    private static void applySale(Connection conn, Sale sale) throws SQLException {
+        // Nothing may be sold to or from a customer or product that is being purged.
+        PurgeWorker.rejectPurging(conn, sale.customerId, sale.productId);
+
+        // Price first: it is a plain read (usually from the cache) and takes no locks.
+        long phaseStart = OperationMetrics.start();
+        double price = sale.isCredit() ? lookupPrice(conn, sale.productId) : 0.0;
+        OperationMetrics.recordPhase(OperationMetrics.Phase.PRICE_LOOKUP, phaseStart);
+
+        // 1. Update the product's quantity, refusing to oversell
+        phaseStart = OperationMetrics.start();
+        updateProductQuantity(conn, sale.productId, sale.quantity);
+        OperationMetrics.recordPhase(OperationMetrics.Phase.QUANTITY_UPDATE, phaseStart);
+
+        // 2. Update the customer's credit if the transaction was made on credit
+        if (sale.isCredit()) {
+            phaseStart = OperationMetrics.start();
+            updateCustomerCredit(conn, sale.customerId, sale.charge(price));
+            OperationMetrics.recordPhase(OperationMetrics.Phase.CREDIT_UPDATE, phaseStart);
+        }
+
+        // 3. Insert the transaction into the Transactions table
+        phaseStart = OperationMetrics.start();
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_TRANSACTION_SQL)) {
+            stmt.setInt(1, sale.customerId);
+            stmt.setInt(2, sale.productId);
+            stmt.setString(3, sale.transactionType);
+            stmt.setInt(4, sale.quantity);
+            stmt.setTimestamp(5, sale.soldAt);
+            stmt.executeUpdate();
+        }
+        OperationMetrics.recordPhase(OperationMetrics.Phase.INSERT, phaseStart);
+
+        // 4. Count it in the day's per-product and per-customer summaries
+        phaseStart = OperationMetrics.start();
+        SalesAggregates.record(conn, sale.customerId, sale.productId, sale.quantity, sale.soldAt);
+        OperationMetrics.recordPhase(OperationMetrics.Phase.AGGREGATES, phaseStart);
+    }
+
+    /**
+     * Writes a group of sales for the group committer: one price lookup for all credit sales,
+     * then one JDBC batch each for the stock updates, the Credit updates and the Transactions inserts.
+     * Batches are sorted by product and customer id so groups lock rows in the same order as everything else.
+     * A sale whose conditional stock decrement matched no row is failed on its own. When the driver
+     * does not report exact per-row counts for the stock batch, the decrements are redone one by one.
+     */
+    private static final class SaleBatchHandler implements GroupCommitter.BatchHandler<Sale> {
+        @Override
+        public void applyBatch(Connection conn, List<Sale> sales, SQLException[] failures) throws SQLException {
+            Set<String> purging = PurgeWorker.purging(conn,
+                    sales.stream().mapToInt(s -> s.customerId).distinct().sorted().toArray(),
+                    sales.stream().mapToInt(s -> s.productId).distinct().sorted().toArray());
+            for (int i = 0; i < sales.size() && !purging.isEmpty(); i++) {
+                failures[i] = PurgeWorker.rejection(purging, sales.get(i).customerId, sales.get(i).productId);
+            }
+            int[] creditProductIds = sales.stream().filter(Sale::isCredit).mapToInt(s -> s.productId).distinct().toArray();
+            Map<Integer, Double> prices = lookupPrices(conn, creditProductIds);
+            for (int i = 0; i < sales.size(); i++) {
+                Sale sale = sales.get(i);
+                if (failures[i] == null && sale.isCredit() && !prices.containsKey(sale.productId)) {
+                    failures[i] = new SQLException("Product ID not found.");
+                }
+            }
+
+            // 1. Conditional stock decrements, in product id order
+            int[] byProduct = IntStream.range(0, sales.size()).filter(i -> failures[i] == null)
+                    .boxed().sorted((a, b) -> Integer.compare(sales.get(a).productId, sales.get(b).productId))
+                    .mapToInt(Integer::intValue).toArray();
+            try (PreparedStatement stock = conn.prepareStatement(UPDATE_QUANTITY_SQL)) {
+                Savepoint beforeStock = conn.setSavepoint();
+                for (int i : byProduct) {
+                    bindStockUpdate(stock, sales.get(i));
+                    stock.addBatch();
+                }
+                int[] counts = stock.executeBatch();
+                if (Arrays.stream(counts).anyMatch(count -> count != 0 && count != 1)) {
+                    // A rewritten batch may answer SUCCESS_NO_INFO, which does not say whether the stock
+                    // condition held: undo the batch and decrement one sale at a time for exact counts.
+                    conn.rollback(beforeStock);
+                    for (int k = 0; k < byProduct.length; k++) {
+                        bindStockUpdate(stock, sales.get(byProduct[k]));
+                        counts[k] = stock.executeUpdate();
+                    }
+                } else {
+                    conn.releaseSavepoint(beforeStock);
+                }
+                for (int k = 0; k < byProduct.length; k++) {
+                    if (counts[k] != 1) {
+                        failures[byProduct[k]] = insufficientStock(sales.get(byProduct[k]).productId);
+                    }
+                }
+            }
+
+            // 2. Credit charges for the surviving credit sales, in customer id order
+            int[] byCustomer = IntStream.range(0, sales.size())
+                    .filter(i -> failures[i] == null && sales.get(i).isCredit())
+                    .boxed().sorted((a, b) -> Integer.compare(sales.get(a).customerId, sales.get(b).customerId))
+                    .mapToInt(Integer::intValue).toArray();
+            if (byCustomer.length > 0) {
+                try (PreparedStatement credit = conn.prepareStatement(UPDATE_CREDIT_SQL)) {
+                    for (int i : byCustomer) {
+                        Sale sale = sales.get(i);
+                        credit.setDouble(1, sale.charge(prices.get(sale.productId)));
+                        credit.setInt(2, sale.customerId);
+                        credit.addBatch();
+                    }
+                    credit.executeBatch();
+                }
+            }
+
+            // 3. Transactions rows for every surviving sale
+            int[] survivors = IntStream.range(0, sales.size()).filter(i -> failures[i] == null).toArray();
+            if (survivors.length == 0) {
+                return;
+            }
+            int[] customerIds = new int[survivors.length];
+            int[] productIds = new int[survivors.length];
+            int[] units = new int[survivors.length];
+            Timestamp[] soldAt = new Timestamp[survivors.length];
+            try (PreparedStatement insert = conn.prepareStatement(INSERT_TRANSACTION_SQL)) {
+                for (int k = 0; k < survivors.length; k++) {
+                    Sale sale = sales.get(survivors[k]);
+                    insert.setInt(1, sale.customerId);
+                    insert.setInt(2, sale.productId);
+                    insert.setString(3, sale.transactionType);
+                    insert.setInt(4, sale.quantity);
+                    insert.setTimestamp(5, sale.soldAt);
+                    insert.addBatch();
+                    customerIds[k] = sale.customerId;
+                    productIds[k] = sale.productId;
+                    units[k] = sale.quantity;
+                    soldAt[k] = sale.soldAt;
+                }
+                insert.executeBatch();
+            }
+
+            // 4. Daily summaries, summed per product and per customer
+            SalesAggregates.recordAll(conn, customerIds, productIds, units, soldAt);
+        }
+
+        @Override
+        public void applyOne(Connection conn, Sale sale) throws SQLException {
+            applySale(conn, sale);
+        }
+
+        private static void bindStockUpdate(PreparedStatement stock, Sale sale) throws SQLException {
+            stock.setInt(1, sale.quantity);
+            stock.setInt(2, sale.productId);
+            stock.setInt(3, sale.quantity);
+        }
+    }
+
+    /**
+     * Executes one sale atomically and reports failure by exception, for callers that need the outcome
+     * (the async facade, load tools). Deadlocks and lock-wait timeouts are retried with bounded backoff;
+     * a sale that would take stock below zero fails with an SQLDataException and changes nothing.
+     * When group commit is enabled the sale is queued and committed together with concurrent sales.
+     * With the offline journal enabled, a sale that cannot reach the database (and every sale while
+     * journaled ones are still waiting) is journaled instead and counts as successful. A sale whose
+     * commit was sent but not acknowledged is not journaled: it fails with
+     * TransactionRetry.CommitOutcomeUnknownException, since the database may already have applied it.
+     * Latency, errors and rollbacks are recorded under makeTransaction in OperationMetrics.
+     */
+    public static void executeSale(int customerId, int productId, String transactionType, int quantity)
+            throws SQLException {
+        executeSale(customerId, productId, transactionType, quantity, null);
+    }
+
+    /**
+     * Same as executeSale without a coupon, but redeems couponCode (null or blank for none): its discount
+     * is taken off the credit charge. An unknown or expired code fails the sale before anything is written.
+     * A sale journaled before the coupon index could be loaded keeps the code, which replay looks up as
+     * of the day of the sale (see Sale.resolveCoupon).
+     */
+    public static void executeSale(int customerId, int productId, String transactionType, int quantity,
+                                   String couponCode) throws SQLException {
+        long started = OperationMetrics.start();
+        SalesJournal journal = salesJournal;
+        try {
+            Sale sale;
+            try {
+                sale = new Sale(customerId, productId, transactionType, quantity, couponDiscount(couponCode));
+            } catch (SQLException e) {
+                // The coupon index could not be loaded because the database is down: journal the code itself.
+                if (journal == null || !SalesJournal.isConnectivityFailure(e)) {
+                    throw e;
+                }
+                journal.markOffline();
+                journal.append(new Sale(customerId, productId, transactionType, quantity, 0.0, couponCode.trim()));
+                return;
+            }
+            if (journal != null && journal.shouldDivert()) {
+                journal.append(sale);
+                return;
+            }
+            try {
+                applyOnline(sale);
+                saleCommitted(sale);
+            } catch (SQLException e) {
+                // Only a failure to reach the database is journaled; a rejected sale (no stock, bad id) still fails.
+                if (journal == null || !SalesJournal.isConnectivityFailure(e)) {
+                    throw e;
+                }
+                journal.markOffline();
+                if (e instanceof TransactionRetry.CommitOutcomeUnknownException) {
+                    throw e; // the sale may already be applied; journaling it could apply it twice
+                }
+                journal.append(sale);
+            }
+        } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.MAKE_TRANSACTION);
+            throw e;
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.MAKE_TRANSACTION, started);
+        }
+    }
+
+    /** Discount of a valid coupon from the in-memory index, 0 for no code. */
+    static double couponDiscount(String couponCode) throws SQLException {
+        if (couponCode == null || couponCode.isBlank()) {
+            return 0.0;
+        }
+        CouponIndex.Coupon coupon = COUPON_INDEX.lookup(POOL, couponCode.trim());
+        if (coupon == null) {
+            throw new SQLDataException("Coupon code " + couponCode.trim() + " is not valid or has expired.");
+        }
+        return coupon.discount;
+    }
+
+    private static void applyOnline(Sale sale) throws SQLException {
+        GroupCommitter<Sale> committer = groupCommitter;
+        if (committer == null) {
+            TransactionRetry.inTransaction(POOL, conn -> applySale(conn, sale), OperationMetrics.Op.MAKE_TRANSACTION);
+            return;
+        }
+        try {
+            committer.submit(sale).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    /**
+     * Makes a transaction and updates the relevant tables atomically.
+     * Uses Connection.setAutoCommit(false) for transaction safety.
+     */
+    public static void makeTransaction(int customerId, int productId, String transactionType, int quantity) {
+        makeTransaction(customerId, productId, transactionType, quantity, null);
+    }
+
+    /** Makes a transaction redeeming a coupon code (null or blank for none); see executeSale. */
+    public static void makeTransaction(int customerId, int productId, String transactionType, int quantity,
+                                       String couponCode) {
+        try {
+            executeSale(customerId, productId, transactionType, quantity, couponCode);
+            SalesJournal journal = salesJournal;
+            if (journal != null && journal.isOffline()) {
+                System.out.println("Transaction saved offline; it will be applied when the database is reachable.");
+            } else {
+                System.out.println("Transaction successful!");
+            }
+        } catch (SQLException e) {
+            System.err.println("Transaction failed: " + e.getMessage());
+            System.out.println("Transaction rolled back.");
+        }
+    }
+
+    /** One line of a basket: a product and how many units of it were sold. */
+    public static final class BasketLine {
+        public final int productId;
+        public final int quantity;
+
+        public BasketLine(int productId, int quantity) {
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+    }
+
+    /**
+     * Decrements stock for several products with one multi-row statement:
+     * UPDATE ... SET quantity = quantity - CASE ... END WHERE product_id IN (...) AND quantity >= CASE ... END.
+     * Quantities must already be merged per product. Padding repeats the last pair, which is harmless
+     * because CASE uses the first matching WHEN. If any product lacks stock the statement matches fewer
+     * rows than requested and the whole basket fails, so the caller's rollback undoes the rest.
+     */
+    private static void updateProductQuantities(Connection conn, int[] productIds, int[] quantities) throws SQLException {
+        int slots = paddedSlots(productIds.length);
+        StringBuilder caseExpr = new StringBuilder("CASE product_id");
+        for (int i = 0; i < slots; i++) {
+            caseExpr.append(" WHEN ? THEN ?");
+        }
+        caseExpr.append(" END");
+        String query = "UPDATE Products SET quantity = quantity - " + caseExpr
+                + " WHERE product_id IN (" + placeholders(slots) + ") AND quantity >= " + caseExpr;
+
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            int param = 1;
+            param = bindCase(stmt, param, slots, productIds, quantities);
+            for (int i = 0; i < slots; i++) {
+                stmt.setInt(param++, productIds[Math.min(i, productIds.length - 1)]);
+            }
+            bindCase(stmt, param, slots, productIds, quantities);
+            if (stmt.executeUpdate() != productIds.length) {
+                throw new SQLDataException("Insufficient stock (or unknown product) for one or more basket lines.");
+            }
+        }
+    }
+
+    private static int bindCase(PreparedStatement stmt, int param, int slots, int[] productIds, int[] quantities)
+            throws SQLException {
+        for (int i = 0; i < slots; i++) {
+            int j = Math.min(i, productIds.length - 1);
+            stmt.setInt(param++, productIds[j]);
+            stmt.setInt(param++, quantities[j]);
+        }
+        return param;
+    }
+
+    /**
+     * Applies a whole basket using an existing connection, in a fixed number of round trips
+     * regardless of its size: one IN (...) price lookup (credit only), one multi-row stock update,
+     * one Credit update for the basket total (less any coupon discount) and one batched insert into
+     * Transactions. Does not commit/close the connection.
+     */
+    private static void applyBasket(Connection conn, int customerId, List<BasketLine> lines, String transactionType,
+                                    double discount) throws SQLException {
+        // Merge repeated products so each Products row is updated once.
+        Map<Integer, Integer> quantityByProduct = new LinkedHashMap<>();
+        for (BasketLine line : lines) {
+            quantityByProduct.merge(line.productId, line.quantity, Integer::sum);
+        }
+        int[] productIds = new int[quantityByProduct.size()];
+        int[] quantities = new int[productIds.length];
+        int n = 0;
+        for (Map.Entry<Integer, Integer> e : quantityByProduct.entrySet()) {
+            productIds[n] = e.getKey();
+            quantities[n++] = e.getValue();
+        }
+
+        // 0. Nothing may be sold to or from a customer or product that is being purged
+        PurgeWorker.rejectPurging(conn, customerId, productIds);
+
+        // 1. Price every product at once if the basket goes on credit
+        double total = 0.0;
+        boolean credit = transactionType.equalsIgnoreCase("credit");
+        if (credit) {
+            Map<Integer, Double> prices = lookupPrices(conn, productIds);
+            for (int i = 0; i < productIds.length; i++) {
+                Double price = prices.get(productIds[i]);
+                if (price == null) {
+                    throw new SQLException("Product ID not found: " + productIds[i]);
+                }
+                total += price * quantities[i];
+            }
+        }
+
+        // 2. Decrement stock for every product in one statement (rows lock in primary key order)
+        updateProductQuantities(conn, productIds, quantities);
+
+        // 3. Charge the basket total to the customer's credit once
+        if (credit) {
+            updateCustomerCredit(conn, customerId, Math.max(0.0, total - discount));
+        }
+
+        // 4. Insert one Transactions row per basket line
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_TRANSACTION_SQL)) {
+            for (BasketLine line : lines) {
+                stmt.setInt(1, customerId);
+                stmt.setInt(2, line.productId);
+                stmt.setString(3, transactionType);
+                stmt.setInt(4, line.quantity);
+                stmt.setTimestamp(5, null);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        // 5. Count the lines in today's summaries
+        int[] customerIds = new int[lines.size()];
+        int[] lineProducts = new int[lines.size()];
+        int[] lineUnits = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            customerIds[i] = customerId;
+            lineProducts[i] = lines.get(i).productId;
+            lineUnits[i] = lines.get(i).quantity;
+        }
+        SalesAggregates.recordAll(conn, customerIds, lineProducts, lineUnits);
     }
 
-    // --- Core Transaction Functions (Require Transactional Safety) ---
-
     /**
-     * Updates the credit of a customer in the Credit table using an existing connection.
-     * This is a helper for makeTransaction and does not commit/close the connection.
+     * Executes a basket sale atomically and reports failure by exception (see makeBasketTransaction).
+     * With the offline journal enabled, a basket is journaled under the same conditions as a single
+     * sale (see executeSale), one journal record per line. Replay applies those lines as separate
+     * sales, so a journaled basket is no longer all-or-nothing: a line that fails on replay (e.g. for
+     * lack of stock) is rejected on its own while the other lines are applied. The coupon discount is
+     * journaled on the first line and so can take off at most that line's charge.
      */
-    private static void updateCustomerCredit(Connection conn, int customerId, double amount) throws SQLException {
-        String query = "UPDATE Credit SET credit = credit + ? WHERE customer_id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setDouble(1, amount);
-            stmt.setInt(2, customerId);
-            stmt.executeUpdate();
+    public static void executeBasketSale(int customerId, List<BasketLine> lines, String transactionType)
+            throws SQLException {
+        executeBasketSale(customerId, lines, transactionType, null);
+    }
+
+    /** Executes a basket sale redeeming a coupon code once against the basket total (null or blank for none). */
+    public static void executeBasketSale(int customerId, List<BasketLine> lines, String transactionType,
+                                         String couponCode) throws SQLException {
+        if (lines.isEmpty()) {
+            throw new SQLDataException("The basket is empty.");
+        }
+        long started = OperationMetrics.start();
+        SalesJournal journal = salesJournal;
+        try {
+            double discount;
+            try {
+                discount = couponDiscount(couponCode);
+            } catch (SQLException e) {
+                if (journal == null || !SalesJournal.isConnectivityFailure(e)) {
+                    throw e;
+                }
+                journal.markOffline();
+                journal.appendAll(basketSales(customerId, lines, transactionType, 0.0, couponCode.trim()));
+                return;
+            }
+            if (journal != null && journal.shouldDivert()) {
+                journal.appendAll(basketSales(customerId, lines, transactionType, discount, null));
+                return;
+            }
+            try {
+                TransactionRetry.inTransaction(POOL, conn -> applyBasket(conn, customerId, lines, transactionType, discount),
+                        OperationMetrics.Op.MAKE_BASKET_TRANSACTION);
+            } catch (SQLException e) {
+                if (journal == null || !SalesJournal.isConnectivityFailure(e)) {
+                    throw e;
+                }
+                journal.markOffline();
+                if (e instanceof TransactionRetry.CommitOutcomeUnknownException) {
+                    throw e; // the basket may already be applied; journaling it could apply it twice
+                }
+                journal.appendAll(basketSales(customerId, lines, transactionType, discount, null));
+                return;
+            }
+            // Journaled lines reach the snapshot when replay commits them (saleCommitted).
+            for (BasketLine line : lines) {
+                INVENTORY.adjustQuantity(line.productId, -line.quantity);
+            }
+        } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.MAKE_BASKET_TRANSACTION);
+            throw e;
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.MAKE_BASKET_TRANSACTION, started);
         }
     }
 
-    /**
-     * Updates the quantity of a product in the Products table using an existing connection.
-     * This is a helper for makeTransaction and does not commit/close the connection.
-     */
-    private static void updateProductQuantity(Connection conn, int productId, int quantity) throws SQLException {
-        String query = "UPDATE Products SET quantity = quantity - ? WHERE product_id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setInt(1, quantity);
-            stmt.setInt(2, productId);
-            stmt.executeUpdate();
+    /** A basket's lines as journal sales, with the discount (or unresolved coupon code) on the first line. */
+    private static List<Sale> basketSales(int customerId, List<BasketLine> lines, String transactionType,
+                                          double discount, String unresolvedCoupon) {
+        List<Sale> sales = new ArrayList<>(lines.size());
+        for (BasketLine line : lines) {
+            boolean first = sales.isEmpty();
+            sales.add(new Sale(customerId, line.productId, transactionType, line.quantity,
+                    first ? discount : 0.0, first ? unresolvedCoupon : null));
         }
+        return sales;
     }
 
     /**
-     * Makes a transaction and updates the relevant tables atomically.
-     * Uses Connection.setAutoCommit(false) for transaction safety.
+     * Makes a multi-line basket transaction atomically: every line is recorded, stock is
+     * decremented and credit is charged in a single commit, or nothing is applied at all.
+     * Deadlocks and lock-wait timeouts are retried with bounded backoff.
      */
-    public static void makeTransaction(int customerId, int productId, String transactionType, int quantity) {
-        Connection conn = null;
+    public static void makeBasketTransaction(int customerId, List<BasketLine> lines, String transactionType) {
         try {
-            conn = getConnection();
-            conn.setAutoCommit(false); // Start transaction
+            executeBasketSale(customerId, lines, transactionType);
+            SalesJournal journal = salesJournal;
+            if (journal != null && journal.isOffline()) {
+                System.out.println("Basket saved offline (" + lines.size()
+                        + " lines); it will be applied when the database is reachable.");
+            } else {
+                System.out.println("Basket transaction successful! (" + lines.size() + " lines)");
+            }
+        } catch (SQLException e) {
+            System.err.println("Transaction failed: " + e.getMessage());
+            System.out.println("Transaction rolled back.");
+        }
+    }
 
-            // 1. Insert the transaction into the Transactions table
-            String insertQuery = "INSERT INTO Transactions (customer_id, product_id, transaction_type) VALUES (?, ?, ?)";
-            try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
-                stmt.setInt(1, customerId);
-                stmt.setInt(2, productId);
-                stmt.setString(3, transactionType);
-                stmt.executeUpdate();
-            }
-
-            // 2. Update the customer's credit if the transaction was made on credit
-            if (transactionType.equalsIgnoreCase("credit")) {
-                // Get the price of the product
-                String priceQuery = "SELECT price FROM Products WHERE product_id = ?";
-                double price = 0.0;
-                try (PreparedStatement priceStmt = conn.prepareStatement(priceQuery)) {
-                    priceStmt.setInt(1, productId);
-                    try (ResultSet rs = priceStmt.executeQuery()) {
-                        if (rs.next()) {
-                            price = rs.getDouble("price");
-                        } else {
-                            throw new SQLException("Product ID not found.");
-                        }
-                    }
-                }
+    // --- Sales Summaries ---
 
-                // Calculate the amount and update credit
-                double amount = price * quantity;
-                updateCustomerCredit(conn, customerId, amount);
-            }
+    /** Today's date by the primary's clock, which dates sales and their summary rows (not the JVM's clock). */
+    public static LocalDate getSalesDay() throws SQLException {
+        try (Connection conn = getConnection()) {
+            return SalesAggregates.today(conn);
+        }
+    }
+
+    /** Units of a product sold on the given day, from the incrementally maintained summary (one key lookup). */
+    public static long getUnitsSold(int productId, LocalDate day) throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return SalesAggregates.unitsSold(conn, productId, day);
+        }
+    }
 
-            // 3. Update the product's quantity
-            updateProductQuantity(conn, productId, quantity);
+    /** Units bought by a customer on the given day, from the incrementally maintained summary. */
+    public static long getUnitsBought(int customerId, LocalDate day) throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return SalesAggregates.unitsBought(conn, customerId, day);
+        }
+    }
 
-            conn.commit(); // Commit if all steps were successful
-            System.out.println("Transaction successful!");
+    /** A customer's outstanding credit (the running total kept in Credit). */
+    public static double getOutstandingCredit(int customerId) throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return SalesAggregates.outstandingCredit(conn, customerId);
+        }
+    }
 
+    /** Prints today's summary for a product and a customer. */
+    public static void displaySalesSummary(int productId, int customerId) {
+        try {
+            LocalDate today = getSalesDay();
+            System.out.println("Units of product " + productId + " sold today: " + getUnitsSold(productId, today));
+            System.out.println("Units bought by customer " + customerId + " today: " + getUnitsBought(customerId, today));
+            System.out.printf("Outstanding credit of customer %d: %.2f%n", customerId, getOutstandingCredit(customerId));
         } catch (SQLException e) {
-            System.err.println("Transaction failed: " + e.getMessage());
-            if (conn != null) {
-                try {
-                    System.out.println("Attempting to roll back transaction...");
-                    conn.rollback(); // Rollback on error
-                    System.out.println("Transaction rolled back.");
-                } catch (SQLException rollbackEx) {
-                    System.err.println("Rollback failed: " + rollbackEx.getMessage());
+            System.err.println("Error reading sales summary: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints stock value and, per vendor, products, units and how many are below threshold, followed by
+     * the first low-stock product ids; all from the in-memory inventory snapshot.
+     */
+    public static void displayLowStockReport(int threshold) {
+        try {
+            long scanStart = System.nanoTime();
+            InventorySnapshot.VendorTotals totals = getVendorTotals(threshold);
+            int[] lowStock = getLowStockProducts(threshold);
+            long stockValue = getStockValueCents();
+            double scanMillis = (System.nanoTime() - scanStart) / 1e6;
+
+            System.out.printf("Stock value: %d.%02d (scanned in %.1f ms)%n", stockValue / 100, stockValue % 100, scanMillis);
+            System.out.printf("%-10s %10s %14s %16s %10s%n", "Vendor", "Products", "Units", "Value", "Low stock");
+            for (int v = 0; v < totals.products.length; v++) {
+                if (totals.products[v] == 0) {
+                    continue;
                 }
+                System.out.printf("%-10s %10d %14d %13d.%02d %10d%n",
+                        v == InventorySnapshot.NO_VENDOR ? "(none)" : String.valueOf(v), totals.products[v],
+                        totals.units[v], totals.valueCents[v] / 100, totals.valueCents[v] % 100,
+                        totals.lowStockProducts[v]);
             }
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.close();
-                } catch (SQLException e) {
-                    System.err.println("Error closing connection: " + e.getMessage());
-                }
+            int shown = Math.min(lowStock.length, 50);
+            System.out.println(lowStock.length + " products below " + threshold + " units"
+                    + (shown < lowStock.length ? " (first " + shown + ")" : "") + ": "
+                    + Arrays.toString(Arrays.copyOf(lowStock, shown)));
+        } catch (SQLException e) {
+            System.err.println("Error loading inventory: " + e.getMessage());
+        }
+    }
+
+    /** Recomputes the daily summary tables from Transactions, for when they have drifted. */
+    public static void rebuildSalesSummaries() {
+        try {
+            SalesAggregates.rebuild(POOL);
+            System.out.println("Sales summaries rebuilt.");
+        } catch (SQLException e) {
+            System.err.println("Error rebuilding sales summaries: " + e.getMessage());
+        }
+    }
+
+    // --- Transaction History ---
+
+    /**
+     * A page of a customer's transactions, newest first, within the inclusive days from..to (either may
+     * be null). Pass the previous page's next cursor, or null for the first page. See TransactionHistory.
+     */
+    public static TransactionHistory.Page getCustomerHistory(int customerId, LocalDate from, LocalDate to,
+                                                             TransactionHistory.Cursor after, int pageSize)
+            throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return TransactionHistory.forCustomer(conn, customerId, from, to, after, pageSize);
+        }
+    }
+
+    /** A page of a product's transactions, newest first; see getCustomerHistory. */
+    public static TransactionHistory.Page getProductHistory(int productId, LocalDate from, LocalDate to,
+                                                            TransactionHistory.Cursor after, int pageSize)
+            throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return TransactionHistory.forProduct(conn, productId, from, to, after, pageSize);
+        }
+    }
+
+    /**
+     * Prints one page of a customer's (byCustomer) or a product's history and returns the cursor for
+     * the next page, or null when there is none or the query failed.
+     */
+    public static TransactionHistory.Cursor displayHistoryPage(boolean byCustomer, int id, LocalDate from,
+                                                               LocalDate to, TransactionHistory.Cursor after,
+                                                               int pageSize) {
+        try {
+            TransactionHistory.Page page = byCustomer
+                    ? getCustomerHistory(id, from, to, after, pageSize)
+                    : getProductHistory(id, from, to, after, pageSize);
+            System.out.printf("%-15s %-12s %-12s %-12s %-10s %s%n",
+                    "transaction_id", "customer_id", "product_id", "type", "quantity", "created_at");
+            for (TransactionHistory.Entry e : page.entries) {
+                System.out.printf("%-15d %-12d %-12d %-12s %-10d %s%n", e.transactionId, e.customerId,
+                        e.productId, e.transactionType, e.quantity, e.createdAt);
             }
+            return page.next;
+        } catch (SQLException e) {
+            System.err.println("Error reading transaction history: " + e.getMessage());
+            return null;
         }
     }
 
     // --- Utility and CRUD Functions (Non-Transactional) ---
 
+    // --- Display Configuration ---
+    // Rows are fetched in chunks of this size through a forward-only cursor instead of materialising
+    // the whole table (with MySQL this relies on useCursorFetch=true in the URL).
+    private static final int DISPLAY_FETCH_SIZE = Integer.getInteger("grocery.display.fetchSize", 1000);
+    private static final int DISPLAY_BUFFER_CHARS = 64 * 1024;
+
+    // Whitelisted tables (lower-case input name -> schema name) and their primary keys for keyset paging.
+    private static final Map<String, String> TABLE_NAMES = Map.of(
+            "customers", "Customers", "credit", "Credit", "vendors", "Vendors", "products", "Products",
+            "transactions", "Transactions", "coupons", "Coupons", "rewards", "Rewards");
+    private static final Map<String, String> PRIMARY_KEYS = Map.of(
+            "customers", "customer_id", "credit", "customer_id", "vendors", "vendor_id", "products", "product_id",
+            "transactions", "transaction_id", "coupons", "coupon_id", "rewards", "reward_id");
+
+    /**
+     * Returns the lower-case whitelisted name for a user-supplied table name, or null if it is not allowed.
+     * Table names cannot be safely prepared, so they must be checked against a whitelist.
+     */
+    private static String whitelistedTable(String tableName) {
+        String key = tableName.toLowerCase().trim();
+        return TABLE_NAMES.containsKey(key) ? key : null;
+    }
+
+    /** A single buffered writer over stdout, so a large table is not written one print call per cell. */
+    private static Writer newConsoleWriter() {
+        System.out.flush();
+        return new BufferedWriter(new OutputStreamWriter(System.out), DISPLAY_BUFFER_CHARS);
+    }
+
+    private static void writeHeader(ResultSetMetaData rsmd, Writer out) throws SQLException, IOException {
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            out.write(rsmd.getColumnName(i));
+            out.write('\t');
+        }
+        out.write('\n');
+    }
+
+    private static void writeRow(ResultSet rs, int columns, Writer out) throws SQLException, IOException {
+        for (int i = 1; i <= columns; i++) {
+            out.write(String.valueOf(rs.getString(i)));
+            out.write('\t');
+        }
+        out.write('\n');
+    }
+
     /**
      * Prints all records from a given table.
+     * Rows are streamed through a forward-only, read-only cursor with a bounded fetch size and written
+     * through one buffered writer, so memory use does not grow with the size of the table.
      */
     public static void displayRecords(String tableName) {
-        // IMPORTANT: tableName cannot be safely prepared, so it must be checked against a whitelist
-        String safeTableName = tableName.toLowerCase().trim();
-        if (!safeTableName.matches("customers|credit|vendors|products|transactions|coupons|rewards")) {
+        String table = whitelistedTable(tableName);
+        if (table == null) {
             System.err.println("Error: Invalid table name provided for display.");
             return;
         }
 
-        String query = "SELECT * FROM " + safeTableName;
+        String query = "SELECT * FROM " + TABLE_NAMES.get(table);
         System.out.println("\n" + tableName + ":");
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int columns = rsmd.getColumnCount();
+        long started = OperationMetrics.start();
+        try (Connection conn = getReadConnection();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(DISPLAY_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(query)) {
+                Writer out = newConsoleWriter();
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int columns = rsmd.getColumnCount();
 
-            // Print column names
-            for (int i = 1; i <= columns; i++) {
-                System.out.print(rsmd.getColumnName(i) + "\t");
+                writeHeader(rsmd, out);
+                while (rs.next()) {
+                    writeRow(rs, columns, out);
+                }
+                out.flush(); // flush only: closing would close System.out
             }
-            System.out.println();
+        } catch (SQLException | IOException e) {
+            OperationMetrics.error(OperationMetrics.Op.DISPLAY_RECORDS);
+            System.err.println("Error displaying records from " + tableName + ": " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.DISPLAY_RECORDS, started);
+        }
+    }
+
+    /**
+     * Prints one page of a table using keyset pagination on its primary key
+     * (WHERE pk > ? ORDER BY pk LIMIT ?), so a page deep into a huge table costs the same as the first.
+     * Returns the last key printed, to pass as afterKey for the next page. An empty page returns
+     * afterKey unchanged, so a caller tailing a growing table can simply poll again with it.
+     * Start with afterKey = 0 (AUTO_INCREMENT keys begin at 1).
+     */
+    public static long displayRecordsPage(String tableName, long afterKey, int pageSize) {
+        String table = whitelistedTable(tableName);
+        if (table == null) {
+            System.err.println("Error: Invalid table name provided for display.");
+            return afterKey;
+        }
+        String key = PRIMARY_KEYS.get(table);
+        String query = "SELECT * FROM " + TABLE_NAMES.get(table) + " WHERE " + key + " > ? ORDER BY " + key + " LIMIT ?";
 
-            // Print the records
-            while (rs.next()) {
-                for (int i = 1; i <= columns; i++) {
-                    System.out.print(rs.getString(i) + "\t");
+        long lastKey = afterKey;
+        long started = OperationMetrics.start();
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, afterKey);
+            stmt.setInt(2, pageSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Writer out = newConsoleWriter();
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int columns = rsmd.getColumnCount();
+
+                writeHeader(rsmd, out);
+                while (rs.next()) {
+                    writeRow(rs, columns, out);
+                    lastKey = rs.getLong(key);
                 }
-                System.out.println();
+                out.flush();
             }
-
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
+            OperationMetrics.error(OperationMetrics.Op.DISPLAY_RECORDS_PAGE);
             System.err.println("Error displaying records from " + tableName + ": " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.DISPLAY_RECORDS_PAGE, started);
         }
+        return lastKey;
     }
 
     /**
-     * Updates the rewards points of a customer in the Rewards table.
+     * Adds points to a customer's Rewards row, reporting failure by exception.
+     * With write-behind enabled the increment is only buffered here and written by the next flush.
      */
-    public static void updateRewards(int customerId, int points) {
+    public static void addRewardPoints(int customerId, int points) throws SQLException {
+        long started = OperationMetrics.start();
+        RewardsWriteBehind buffer = rewardsBuffer;
+        if (buffer != null) {
+            buffer.add(customerId, points);
+            OperationMetrics.record(OperationMetrics.Op.UPDATE_REWARDS, started);
+            return;
+        }
         String query = "UPDATE Rewards SET points = points + ? WHERE customer_id = ?";
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, points);
             stmt.setInt(2, customerId);
             stmt.executeUpdate();
+        } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.UPDATE_REWARDS);
+            throw e;
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.UPDATE_REWARDS, started);
+        }
+    }
+
+    /**
+     * Updates the rewards points of a customer in the Rewards table.
+     */
+    public static void updateRewards(int customerId, int points) {
+        try {
+            addRewardPoints(customerId, points);
             System.out.println("Rewards points updated successfully.");
         } catch (SQLException e) {
             System.err.println("Error updating rewards: " + e.getMessage());
@@ -175,18 +1438,40 @@ public class GroceryManagementApp {
     }
 
     /**
-     * Adds a customer to the Customers table.
+     * Inserts a customer and returns the generated customer_id, reporting failure by exception.
      */
-    public static void addCustomer(String firstName, String lastName, String email, String phone, String address) {
+    public static int insertCustomer(String firstName, String lastName, String email, String phone, String address)
+            throws SQLException {
         String query = "INSERT INTO Customers (first_name, last_name, email, phone, address) VALUES (?, ?, ?, ?, ?)";
+        long started = OperationMetrics.start();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, firstName);
             stmt.setString(2, lastName);
             stmt.setString(3, email);
             stmt.setString(4, phone);
             stmt.setString(5, address);
             stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+                throw new SQLException("No customer_id was generated.");
+            }
+        } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.ADD_CUSTOMER);
+            throw e;
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.ADD_CUSTOMER, started);
+        }
+    }
+
+    /**
+     * Adds a customer to the Customers table.
+     */
+    public static void addCustomer(String firstName, String lastName, String email, String phone, String address) {
+        try {
+            insertCustomer(firstName, lastName, email, phone, address);
             System.out.println("Customer added successfully.");
         } catch (SQLException e) {
             System.err.println("Error adding customer: " + e.getMessage());
@@ -198,6 +1483,7 @@ public class GroceryManagementApp {
      */
     public static void addVendor(String name, String phone, String email, String address) {
         String query = "INSERT INTO Vendors (name, phone, email, address) VALUES (?, ?, ?, ?)";
+        long started = OperationMetrics.start();
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, name);
@@ -207,7 +1493,10 @@ public class GroceryManagementApp {
             stmt.executeUpdate();
             System.out.println("Vendor added successfully.");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.ADD_VENDOR);
             System.err.println("Error adding vendor: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.ADD_VENDOR, started);
         }
     }
 
@@ -216,16 +1505,25 @@ public class GroceryManagementApp {
      */
     public static void addProduct(String name, int vendorId, double price, int quantity) {
         String query = "INSERT INTO Products (name, vendor_id, price, quantity) VALUES (?, ?, ?, ?)";
+        long started = OperationMetrics.start();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, name);
             stmt.setInt(2, vendorId);
             stmt.setDouble(3, price);
             stmt.setInt(4, quantity);
             stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    INVENTORY.put(keys.getInt(1), quantity, toCents(BigDecimal.valueOf(price)), vendorId);
+                }
+            }
             System.out.println("Product added successfully.");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.ADD_PRODUCT);
             System.err.println("Error adding product: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.ADD_PRODUCT, started);
         }
     }
 
@@ -234,140 +1532,220 @@ public class GroceryManagementApp {
      */
     public static void addCoupon(String code, double discount, String expirationDate) {
         String query = "INSERT INTO Coupons (code, discount, expiration_date) VALUES (?, ?, ?)";
+        long started = OperationMetrics.start();
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, code);
             stmt.setDouble(2, discount);
             // Assuming expirationDate is a valid SQL date string (YYYY-MM-DD)
             stmt.setString(3, expirationDate);
             stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    COUPON_INDEX.refresh(conn, keys.getInt(1)); // re-read: the server normalizes the date
+                }
+            }
             System.out.println("Coupon added successfully.");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.ADD_COUPON);
             System.err.println("Error adding coupon: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.ADD_COUPON, started);
+        }
+    }
+
+    // --- Bulk Updates ---
+    // Rows per transaction for bulkUpdate; each chunk is one JDBC batch per distinct set of columns.
+    private static final int BULK_UPDATE_CHUNK_SIZE = Integer.getInteger("grocery.bulkUpdate.chunkSize", 1000);
+
+    /**
+     * Updates many rows of one table, each with its own map of column to typed value (String, Integer,
+     * BigDecimal, LocalDate), in chunked batches; see BulkUpdater. The product cache, inventory snapshot
+     * and coupon index are brought up to date after every committed chunk. The result reports rows matched and throughput.
+     */
+    public static BulkUpdater.Result bulkUpdate(BulkUpdater.Table table, List<BulkUpdater.Row> rows)
+            throws SQLException {
+        long started = OperationMetrics.start();
+        try {
+            return BulkUpdater.update(POOL, table, rows, BULK_UPDATE_CHUNK_SIZE, GroceryManagementApp::afterBulkChunk);
+        } catch (SQLException | RuntimeException e) {
+            OperationMetrics.error(OperationMetrics.Op.BULK_UPDATE);
+            throw e;
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.BULK_UPDATE, started);
+        }
+    }
+
+    private static void afterBulkChunk(BulkUpdater.Table table, List<BulkUpdater.Row> rows, Iterable<String> columns)
+            throws SQLException {
+        if (table == BulkUpdater.Table.COUPONS) {
+            try (Connection conn = getConnection()) {
+                for (BulkUpdater.Row row : rows) {
+                    COUPON_INDEX.refresh(conn, row.id);
+                }
+            }
+            return;
+        }
+        if (table != BulkUpdater.Table.PRODUCTS) {
+            return;
+        }
+        boolean cached = table.touchesProductCache(columns);
+        for (BulkUpdater.Row row : rows) {
+            if (cached) {
+                PRODUCT_CACHE.invalidate(row.id);
+            }
+            // The values were written as given, so the snapshot takes them directly.
+            Integer quantity = (Integer) row.values.get("quantity");
+            BigDecimal price = (BigDecimal) row.values.get("price");
+            Integer vendorId = row.values.containsKey("vendor_id")
+                    ? (Integer) Objects.requireNonNullElse(row.values.get("vendor_id"), InventorySnapshot.NO_VENDOR)
+                    : null;
+            if (quantity != null || price != null || vendorId != null) {
+                INVENTORY.update(row.id, quantity, price == null ? null : toCents(price), vendorId);
+            }
         }
     }
 
+    /** The single-field update behind the update* menu options: console text is parsed to the column's type. */
+    private static void updateField(BulkUpdater.Table table, int id, String field, String newValue) throws SQLException {
+        Map<String, Object> values = new HashMap<>();
+        values.put(field, table.parse(field, newValue));
+        BulkUpdater.update(POOL, table, List.of(new BulkUpdater.Row(id, values)), 1, GroceryManagementApp::afterBulkChunk);
+    }
+
     /**
-     * Updates a field in the Customers table for a given customer.
+     * Updates one field of a customer. The field must be one of BulkUpdater's whitelisted columns and
+     * newValue is converted to its type, so a bad name or value is rejected before reaching the database.
      */
     public static void updateCustomer(int customerId, String field, String newValue) {
-        // Field name is dynamic, so it cannot be a prepared statement parameter.
-        // Needs careful sanitation/whitelisting in a production environment.
-        String query = String.format("UPDATE Customers SET %s = ? WHERE customer_id = ?", field);
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, newValue);
-            stmt.setInt(2, customerId);
-            stmt.executeUpdate();
+        long started = OperationMetrics.start();
+        try {
+            updateField(BulkUpdater.Table.CUSTOMERS, customerId, field, newValue);
             System.out.println("Customer updated successfully.");
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
+            OperationMetrics.error(OperationMetrics.Op.UPDATE_CUSTOMER);
             System.err.println("Error updating customer: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.UPDATE_CUSTOMER, started);
         }
     }
 
-    // A generic update function could handle vendor, product, and coupon updates, but
-    // for fidelity to the original code, we'll keep them separate.
-
-    /**
-     * Updates a field in the Vendors table for a given vendor.
-     */
+    /** Updates one field of a vendor; see updateCustomer. */
     public static void updateVendor(int vendorId, String field, String newValue) {
-        String query = String.format("UPDATE Vendors SET %s = ? WHERE vendor_id = ?", field);
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, newValue);
-            stmt.setInt(2, vendorId);
-            stmt.executeUpdate();
+        long started = OperationMetrics.start();
+        try {
+            updateField(BulkUpdater.Table.VENDORS, vendorId, field, newValue);
             System.out.println("Vendor updated successfully.");
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
+            OperationMetrics.error(OperationMetrics.Op.UPDATE_VENDOR);
             System.err.println("Error updating vendor: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.UPDATE_VENDOR, started);
         }
     }
 
-    /**
-     * Updates a field in the Products table for a given product.
-     */
+    /** Updates one field of a product; see updateCustomer. */
     public static void updateProduct(int productId, String field, String newValue) {
-        String query = String.format("UPDATE Products SET %s = ? WHERE product_id = ?", field);
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, newValue);
-            stmt.setInt(2, productId);
-            stmt.executeUpdate();
+        long started = OperationMetrics.start();
+        try {
+            updateField(BulkUpdater.Table.PRODUCTS, productId, field, newValue);
             System.out.println("Product updated successfully.");
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
+            OperationMetrics.error(OperationMetrics.Op.UPDATE_PRODUCT);
             System.err.println("Error updating product: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.UPDATE_PRODUCT, started);
         }
     }
 
-    /**
-     * Updates a field in the Coupons table for a given coupon.
-     */
+    /** Updates one field of a coupon; see updateCustomer. */
     public static void updateCoupon(int couponId, String field, String newValue) {
-        String query = String.format("UPDATE Coupons SET %s = ? WHERE coupon_id = ?", field);
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, newValue);
-            stmt.setInt(2, couponId);
-            stmt.executeUpdate();
+        long started = OperationMetrics.start();
+        try {
+            updateField(BulkUpdater.Table.COUPONS, couponId, field, newValue);
             System.out.println("Coupon updated successfully.");
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
+            OperationMetrics.error(OperationMetrics.Op.UPDATE_COUPON);
             System.err.println("Error updating coupon: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.UPDATE_COUPON, started);
         }
     }
 
 
     // --- Delete Functions ---
 
-    /** Deletes a customer. */
+    /** Deletes a customer and everything that references it, in the background (see purgeCustomer). */
     public static void deleteCustomer(int customerId) {
-        String query = "DELETE FROM Customers WHERE customer_id = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setInt(1, customerId);
-            stmt.executeUpdate();
-            System.out.println("Customer deleted successfully.");
+        long started = OperationMetrics.start();
+        try {
+            purgeCustomer(customerId).whenComplete((rows, e) -> reportPurge("customer", customerId, rows, e));
+            System.out.println("Customer deletion started in the background (see operation metrics for progress).");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.DELETE_CUSTOMER);
             System.err.println("Error deleting customer: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.DELETE_CUSTOMER, started);
         }
     }
 
     /** Deletes a vendor. */
     public static void deleteVendor(int vendorId) {
         String query = "DELETE FROM Vendors WHERE vendor_id = ?";
+        long started = OperationMetrics.start();
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, vendorId);
-            stmt.executeUpdate();
+            if (stmt.executeUpdate() > 0) {
+                // Autocommit: the delete is committed, and Products.vendor_id has gone to NULL with it.
+                INVENTORY.vendorDeleted(vendorId);
+            }
             System.out.println("Vendor deleted successfully.");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.DELETE_VENDOR);
             System.err.println("Error deleting vendor: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.DELETE_VENDOR, started);
         }
     }
 
-    /** Deletes a product. */
+    /** Deletes a product and its transactions, in the background (see purgeProduct). */
     public static void deleteProduct(int productId) {
-        String query = "DELETE FROM Products WHERE product_id = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setInt(1, productId);
-            stmt.executeUpdate();
-            System.out.println("Product deleted successfully.");
+        long started = OperationMetrics.start();
+        try {
+            purgeProduct(productId).whenComplete((rows, e) -> reportPurge("product", productId, rows, e));
+            System.out.println("Product deletion started in the background (see operation metrics for progress).");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.DELETE_PRODUCT);
             System.err.println("Error deleting product: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.DELETE_PRODUCT, started);
+        }
+    }
+
+    private static void reportPurge(String what, int id, Long rows, Throwable error) {
+        if (error != null) {
+            System.err.println("Deleting " + what + " " + id + " did not finish: " + error.getMessage());
+        } else {
+            System.err.println("Deleted " + what + " " + id + " (" + rows + " rows).");
         }
     }
 
     /** Deletes a coupon. */
     public static void deleteCoupon(int couponId) {
         String query = "DELETE FROM Coupons WHERE coupon_id = ?";
+        long started = OperationMetrics.start();
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, couponId);
             stmt.executeUpdate();
+            COUPON_INDEX.removed(couponId);
             System.out.println("Coupon deleted successfully.");
         } catch (SQLException e) {
+            OperationMetrics.error(OperationMetrics.Op.DELETE_COUPON);
             System.err.println("Error deleting coupon: " + e.getMessage());
+        } finally {
+            OperationMetrics.record(OperationMetrics.Op.DELETE_COUPON, started);
         }
     }
 
@@ -390,7 +1768,12 @@ public class GroceryManagementApp {
         System.out.println("13. Delete a vendor");
         System.out.println("14. Delete a product");
         System.out.println("15. Delete a coupon");
-        System.out.println("16. Quit");
+        System.out.println("16. Show operation metrics");
+        System.out.println("17. Show today's sales summary");
+        System.out.println("18. Rebuild sales summaries");
+        System.out.println("19. Show customer or product history");
+        System.out.println("20. Show low-stock report");
+        System.out.println("21. Quit");
     }
 
     public static void main(String[] args) {
@@ -402,11 +1785,26 @@ public class GroceryManagementApp {
             try (Connection testConn = getConnection()) {
                 System.out.println("Database connection established successfully.");
             }
+            try {
+                int resumed = resumePurges();
+                if (resumed > 0) {
+                    System.out.println("Resuming " + resumed + " unfinished deletion(s) in the background.");
+                }
+            } catch (SQLException e) {
+                System.err.println("Could not resume unfinished deletions: " + e.getMessage());
+            }
         } catch (SQLException e) {
-            System.err.println("CRITICAL ERROR: Failed to establish database connection.");
-            System.err.println("Please ensure MySQL is running, the database 'grocery_management' exists, and the MySQL Connector/J driver is in your classpath.");
-            System.err.println("Details: " + e.getMessage());
-            return;
+            if (salesJournal != null && SalesJournal.isConnectivityFailure(e)) {
+                // The till can still sell: sales are journaled until the database is back.
+                salesJournal.markOffline();
+                System.err.println("WARNING: Database unreachable (" + e.getMessage() + "); running in offline mode.");
+            } else {
+                System.err.println("CRITICAL ERROR: Failed to establish database connection.");
+                System.err.println("Please ensure MySQL is running, the database 'grocery_management' exists, and the MySQL Connector/J driver is in your classpath.");
+                System.err.println("Details: " + e.getMessage());
+                POOL.close();
+                return;
+            }
         }
 
 
@@ -436,7 +1834,9 @@ public class GroceryManagementApp {
                         System.out.print("Enter the quantity: ");
                         int qty = scanner.nextInt();
                         scanner.nextLine();
-                        makeTransaction(cId, pId, tType, qty);
+                        System.out.print("Enter a coupon code (blank for none): ");
+                        String coupon = scanner.nextLine().trim();
+                        makeTransaction(cId, pId, tType, qty, coupon);
                         break;
 
                     case 2: // Display records
@@ -542,13 +1942,83 @@ public class GroceryManagementApp {
                         break;
                     }
 
-                    case 16: // Quit
+                    case 16: // Show operation metrics (latencies in milliseconds)
+                        System.out.println(getOperationMetrics());
+                        System.out.println("Connection pool: " + getPoolStats());
+                        System.out.println("Read routing: " + getReplicaStats());
+                        System.out.println("Product cache: " + getProductCacheStats());
+                        System.out.println("Inventory snapshot: " + getInventoryStats());
+                        System.out.println("Background deletions: " + getPurgeProgress());
+                        break;
+
+                    case 17: // Show today's sales summary
+                        System.out.print("Enter the product ID: ");
+                        int sPId = scanner.nextInt();
+                        System.out.print("Enter the customer ID: ");
+                        int sCId = scanner.nextInt();
+                        scanner.nextLine();
+                        displaySalesSummary(sPId, sCId);
+                        break;
+
+                    case 18: // Rebuild sales summaries
+                        rebuildSalesSummaries();
+                        break;
+
+                    case 19: { // Show customer or product history, a page at a time
+                        System.out.print("History of a customer or a product? (c/p): ");
+                        boolean byCustomer = !scanner.nextLine().trim().equalsIgnoreCase("p");
+                        System.out.print(byCustomer ? "Enter the customer ID: " : "Enter the product ID: ");
+                        int hId = scanner.nextInt();
+                        scanner.nextLine();
+                        System.out.print("From date (YYYY-MM-DD, blank for none): ");
+                        String fromText = scanner.nextLine().trim();
+                        System.out.print("To date (YYYY-MM-DD, blank for none): ");
+                        String toText = scanner.nextLine().trim();
+                        LocalDate from;
+                        LocalDate to;
+                        try {
+                            from = fromText.isEmpty() ? null : LocalDate.parse(fromText);
+                            to = toText.isEmpty() ? null : LocalDate.parse(toText);
+                        } catch (java.time.format.DateTimeParseException e) {
+                            System.err.println("Invalid date: " + e.getParsedString());
+                            break;
+                        }
+                        TransactionHistory.Cursor cursor = displayHistoryPage(byCustomer, hId, from, to, null, 20);
+                        while (cursor != null) {
+                            System.out.print("Enter for the next page, anything else to stop: ");
+                            if (!scanner.nextLine().isEmpty()) {
+                                break;
+                            }
+                            cursor = displayHistoryPage(byCustomer, hId, from, to, cursor, 20);
+                        }
+                        break;
+                    }
+
+                    case 20: { // Show low-stock report
+                        System.out.print("Low-stock threshold (blank for " + LOW_STOCK_THRESHOLD + "): ");
+                        String thresholdText = scanner.nextLine().trim();
+                        try {
+                            displayLowStockReport(thresholdText.isEmpty() ? LOW_STOCK_THRESHOLD : Integer.parseInt(thresholdText));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid threshold: " + thresholdText);
+                        }
+                        break;
+                    }
+
+                    case 21: // Quit
                         System.out.println("Exiting application.");
                         scanner.close();
+                        OperationMetrics.stopPeriodicDump();
+                        disableGroupCommit();
+                        disableOfflineJournal();
+                        disableRewardsWriteBehind();
+                        PURGE_WORKER.close();
+                        REPLICAS.close();
+                        POOL.close();
                         return;
 
                     default:
-                        System.out.println("Invalid choice. Please enter a number between 1 and 16.");
+                        System.out.println("Invalid choice. Please enter a number between 1 and 21.");
                 }
             } catch (java.util.InputMismatchException e) {
                 System.err.println("Invalid input type. Please enter the correct data type (e.g., number for ID/quantity).");
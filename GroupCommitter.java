@@ -0,0 +1,253 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group-commit engine: concurrent callers enqueue work items, and a single flusher thread
+ * applies up to maxBatchSize of them (or whatever arrives within maxWaitMicros of the first)
+ * in one database transaction, so many callers share one commit and one fsync.
+ * Each caller gets its own result. If the batched write fails, the group is rolled back and
+ * replayed item by item under savepoints, so one bad row only fails its own caller.
+ * A group aborted by a deadlock or lock-wait timeout is retried as a whole (see TransactionRetry).
+ */
+public class GroupCommitter<T> implements AutoCloseable {
+
+    /** Writes items of one type. Neither method commits; the committer owns the transaction. */
+    public interface BatchHandler<T> {
+        /**
+         * Applies every item using JDBC batching. Items that can be rejected up front (e.g. an
+         * unknown product) are recorded in failures[i] and skipped. Throwing an SQLException
+         * makes the committer roll back and fall back to applyOne for each item.
+         */
+        void applyBatch(Connection conn, List<T> items, SQLException[] failures) throws SQLException;
+
+        /** Applies a single item; used to isolate the failing row after a batch error. */
+        void applyOne(Connection conn, T item) throws SQLException;
+    }
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final DataSource dataSource;
+    private final BatchHandler<T> handler;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private final LongAdder groupsCommitted = new LongAdder();
+    private final LongAdder itemsCommitted = new LongAdder();
+    private final LongAdder itemsFailed = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public GroupCommitter(DataSource dataSource, BatchHandler<T> handler, int maxBatchSize, long maxWaitMicros) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.dataSource = dataSource;
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.flusher = new Thread(this::run, "group-commit-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /** Queues an item; the future completes once its group has committed, or exceptionally with the item's error. */
+    public CompletableFuture<Void> submit(T item) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new SQLException("Group committer is closed."));
+            return result;
+        }
+        queue.add(new Pending<>(item, result));
+        return result;
+    }
+
+    private void run() {
+        List<Pending<T>> group = new ArrayList<>(maxBatchSize);
+        while (true) {
+            Pending<T> first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            group.add(first);
+            queue.drainTo(group, maxBatchSize - group.size());
+            long deadline = System.nanoTime() + maxWaitNanos;
+            while (group.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                Pending<T> next;
+                try {
+                    next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+                queue.drainTo(group, maxBatchSize - group.size());
+            }
+
+            flush(group);
+            group.clear();
+        }
+    }
+
+    private void flush(List<Pending<T>> group) {
+        List<T> items = new ArrayList<>(group.size());
+        for (Pending<T> p : group) {
+            items.add(p.item);
+        }
+        SQLException[] failures = new SQLException[items.size()];
+
+        for (int attempt = 1; ; attempt++) {
+            Arrays.fill(failures, null);
+            try {
+                writeGroup(items, failures);
+                break;
+            } catch (SQLException e) {
+                if (attempt < TransactionRetry.MAX_ATTEMPTS && TransactionRetry.isRetryable(e)) {
+                    try {
+                        TransactionRetry.backoff(attempt);
+                        continue;
+                    } catch (SQLException interrupted) {
+                        e = interrupted;
+                    }
+                }
+                failAll(group, e);
+                return;
+            } catch (RuntimeException e) {
+                failAll(group, e);
+                return;
+            }
+        }
+
+        groupsCommitted.increment();
+        for (int i = 0; i < group.size(); i++) {
+            if (failures[i] == null) {
+                itemsCommitted.increment();
+                group.get(i).result.complete(null);
+            } else {
+                itemsFailed.increment();
+                group.get(i).result.completeExceptionally(failures[i]);
+            }
+        }
+    }
+
+    /**
+     * One attempt at the group: the batched write, or on a non-retryable batch error the item-by-item
+     * fallback, then a single commit. A deadlock or lock timeout (which aborts the whole transaction)
+     * propagates so the caller can retry the group from the start.
+     */
+    private void writeGroup(List<T> items, SQLException[] failures) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try {
+                    handler.applyBatch(conn, items, failures);
+                } catch (SQLException batchError) {
+                    if (TransactionRetry.isRetryable(batchError)) {
+                        throw batchError;
+                    }
+                    conn.rollback();
+                    fallbacks.increment();
+                    Arrays.fill(failures, null);
+                    applyIndividually(conn, items, failures);
+                }
+                TransactionRetry.commit(conn);
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    // A dead connection cannot roll back; keep the original error, it says what happened.
+                    e.addSuppressed(rollbackEx);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * No connection or a lock failure that kept recurring: nothing in the group was applied. If the commit
+     * itself failed (CommitOutcomeUnknownException) the group may have been applied after all.
+     */
+    private void failAll(List<Pending<T>> group, Throwable cause) {
+        for (Pending<T> p : group) {
+            p.result.completeExceptionally(cause);
+        }
+        itemsFailed.add(group.size());
+    }
+
+    private void applyIndividually(Connection conn, List<T> items, SQLException[] failures) throws SQLException {
+        for (int i = 0; i < items.size(); i++) {
+            if (failures[i] != null) {
+                continue; // already rejected up front
+            }
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                handler.applyOne(conn, items.get(i));
+                conn.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                if (TransactionRetry.isRetryable(e)) {
+                    throw e; // the database has already rolled back the whole transaction
+                }
+                conn.rollback(savepoint);
+                failures[i] = e;
+            }
+        }
+    }
+
+    /** Stops accepting work, flushes everything already queued and waits for the flusher to finish. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything that slipped in between the closed check in submit() and the flusher exiting.
+        Pending<T> straggler;
+        while ((straggler = queue.poll()) != null) {
+            straggler.result.completeExceptionally(new SQLException("Group committer is closed."));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("groups=%d, committed=%d, failed=%d, fallbacks=%d, queued=%d",
+                groupsCommitted.sum(), itemsCommitted.sum(), itemsFailed.sum(), fallbacks.sum(), queue.size());
+    }
+
+    private static final class Pending<T> {
+        final T item;
+        final CompletableFuture<Void> result;
+
+        Pending(T item, CompletableFuture<Void> result) {
+            this.item = item;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory copy of the Products columns that replenishment needs, held in parallel primitive arrays
+ * sorted by product id: id, quantity, price in cents and vendor id (0 for none). It is loaded once
+ * by streaming Products through a forward-only cursor and then kept current by the application's
+ * write paths after each commit, so low-stock, stock-value and per-vendor scans never touch the
+ * database and run as parallel passes over the arrays with no per-row allocation.
+ *
+ * Element updates (a sale's stock decrement, a new price) are atomic per element and only share a
+ * read lock with each other; adding a product or reloading takes the write lock. Scans take no lock:
+ * the arrays and their size are published together as one immutable Columns, and rows are never
+ * moved inside published arrays (an insert that is not an append copies into new ones), so a scan
+ * always pairs an id with its own quantity, price and vendor, each as of some moment during the
+ * scan -- which is all a report needs. Changes
+ * committed while a load is streaming may be missed for rows it already read; reload() corrects
+ * any such drift, as well as edits made outside this application.
+ */
+public final class InventorySnapshot {
+
+    /** vendorId of a product without a vendor. */
+    public static final int NO_VENDOR = 0;
+
+    private static final int DELETED = Integer.MIN_VALUE; // quantity of a removed product
+    private static final int MIN_SLICE = 16_384;
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final String LOAD_SQL =
+            "SELECT product_id, quantity, CAST(ROUND(price * 100) AS SIGNED), vendor_id FROM Products ORDER BY product_id";
+
+    /** The parallel arrays and how many rows of them are in use; replaced as a whole under the write lock. */
+    private static final class Columns {
+        final int[] ids;
+        final int[] quantities;
+        final long[] pricesCents;
+        final int[] vendorIds;
+        final int size;
+
+        Columns(int[] ids, int[] quantities, long[] pricesCents, int[] vendorIds, int size) {
+            this.ids = ids;
+            this.quantities = quantities;
+            this.pricesCents = pricesCents;
+            this.vendorIds = vendorIds;
+            this.size = size;
+        }
+
+        /** Copies into arrays of the given capacity, leaving a one-row gap at gap (or none if gap < 0). */
+        Columns copy(int capacity, int gap) {
+            int[] newIds = new int[capacity];
+            int[] newQuantities = new int[capacity];
+            long[] newPrices = new long[capacity];
+            int[] newVendors = new int[capacity];
+            int head = gap < 0 ? size : gap;
+            int shift = gap < 0 ? 0 : 1;
+            System.arraycopy(ids, 0, newIds, 0, head);
+            System.arraycopy(quantities, 0, newQuantities, 0, head);
+            System.arraycopy(pricesCents, 0, newPrices, 0, head);
+            System.arraycopy(vendorIds, 0, newVendors, 0, head);
+            System.arraycopy(ids, head, newIds, head + shift, size - head);
+            System.arraycopy(quantities, head, newQuantities, head + shift, size - head);
+            System.arraycopy(pricesCents, head, newPrices, head + shift, size - head);
+            System.arraycopy(vendorIds, head, newVendors, head + shift, size - head);
+            return new Columns(newIds, newQuantities, newPrices, newVendors, size);
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final int fetchSize;
+    private volatile Columns columns = new Columns(new int[0], new int[0], new long[0], new int[0], 0);
+    private volatile int maxVendorId;
+    private volatile boolean loaded;
+
+    public InventorySnapshot(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Streams Products into fresh arrays and swaps them in. */
+    public void reload(Connection conn) throws SQLException {
+        int capacity = Math.max(1024, columns.size);
+        int[] newIds = new int[capacity];
+        int[] newQuantities = new int[capacity];
+        long[] newPrices = new long[capacity];
+        int[] newVendors = new int[capacity];
+        int n = 0;
+        int maxVendor = NO_VENDOR;
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery(LOAD_SQL)) {
+                while (rs.next()) {
+                    if (n == newIds.length) {
+                        int grown = n + (n >> 1);
+                        newIds = Arrays.copyOf(newIds, grown);
+                        newQuantities = Arrays.copyOf(newQuantities, grown);
+                        newPrices = Arrays.copyOf(newPrices, grown);
+                        newVendors = Arrays.copyOf(newVendors, grown);
+                    }
+                    newIds[n] = rs.getInt(1);
+                    newQuantities[n] = rs.getInt(2); // NULL quantity reads as 0
+                    newPrices[n] = rs.getLong(3);
+                    newVendors[n] = Math.max(NO_VENDOR, rs.getInt(4));
+                    maxVendor = Math.max(maxVendor, newVendors[n]);
+                    n++;
+                }
+            }
+        }
+        long stamp = lock.writeLock();
+        try {
+            columns = new Columns(newIds, newQuantities, newPrices, newVendors, n);
+            maxVendorId = maxVendor;
+            loaded = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // --- Incremental updates (called after the change has committed; no-ops until loaded) ---
+
+    /** Adds units to a product's stock; negative for a sale. */
+    public void adjustQuantity(int productId, int delta) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, productId);
+            if (i < 0) {
+                return;
+            }
+            // A CAS loop rather than getAndAdd: remove() may mark the row DELETED at any moment, and
+            // adding to the marker would resurrect the product with about 2^31 units.
+            int q;
+            do {
+                q = (int) INTS.getVolatile(c.quantities, i);
+                if (q == DELETED) {
+                    return;
+                }
+            } while (!INTS.compareAndSet(c.quantities, i, q, q + delta));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Sets a product's quantity, price and vendor, adding it if it is not in the snapshot yet. */
+    public void put(int productId, int quantity, long priceCents, int vendorId) {
+        if (!loaded) {
+            return;
+        }
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, productId);
+            if (i >= 0) {
+                LONGS.setVolatile(c.pricesCents, i, priceCents);
+                INTS.setVolatile(c.vendorIds, i, Math.max(NO_VENDOR, vendorId));
+                INTS.setVolatile(c.quantities, i, quantity);
+                raiseMaxVendor(vendorId);
+                return;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        insert(productId, quantity, priceCents, vendorId);
+    }
+
+    /** Changes some of a product's fields; null leaves a field as it is. */
+    public void update(int productId, Integer quantity, Long priceCents, Integer vendorId) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, productId);
+            if (i < 0 || (int) INTS.getVolatile(c.quantities, i) == DELETED) {
+                return;
+            }
+            if (priceCents != null) {
+                LONGS.setVolatile(c.pricesCents, i, priceCents);
+            }
+            if (vendorId != null) {
+                INTS.setVolatile(c.vendorIds, i, Math.max(NO_VENDOR, vendorId));
+                raiseMaxVendor(vendorId);
+            }
+            if (quantity != null) {
+                INTS.setVolatile(c.quantities, i, quantity);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Marks a deleted product; scans skip it from then on. */
+    public void remove(int productId) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, productId);
+            if (i >= 0) {
+                INTS.setVolatile(c.quantities, i, DELETED);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Moves a deleted vendor's products to NO_VENDOR, as the database does (vendor_id is ON DELETE
+     * SET NULL). Returns how many products were moved.
+     */
+    public int vendorDeleted(int vendorId) {
+        if (vendorId == NO_VENDOR) {
+            return 0;
+        }
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int moved = 0;
+            for (int i = 0; i < c.size; i++) {
+                if ((int) INTS.getVolatile(c.vendorIds, i) == vendorId) {
+                    INTS.setVolatile(c.vendorIds, i, NO_VENDOR);
+                    moved++;
+                }
+            }
+            return moved;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private synchronized void raiseMaxVendor(int vendorId) {
+        if (vendorId > maxVendorId) {
+            maxVendorId = vendorId;
+        }
+    }
+
+    /** Index of the product in the arrays, or -1. Caller holds a lock. */
+    private int indexOf(Columns c, int productId) {
+        return loaded ? Math.max(-1, Arrays.binarySearch(c.ids, 0, c.size, productId)) : -1;
+    }
+
+    private void insert(int productId, int quantity, long priceCents, int vendorId) {
+        long stamp = lock.writeLock();
+        try {
+            Columns c = columns;
+            int n = c.size;
+            int pos = Arrays.binarySearch(c.ids, 0, n, productId);
+            if (pos >= 0) {
+                INTS.setVolatile(c.vendorIds, pos, Math.max(NO_VENDOR, vendorId));
+                LONGS.setVolatile(c.pricesCents, pos, priceCents);
+                INTS.setVolatile(c.quantities, pos, quantity);
+            } else {
+                pos = -pos - 1;
+                // New ids are normally the largest: append in place beyond the published size, growing
+                // first if needed. Anything else is copied into new arrays, as scans may be reading.
+                Columns next = pos < n ? c.copy(Math.max(c.ids.length, n + 1), pos)
+                        : n < c.ids.length ? c : c.copy(Math.max(1024, n + (n >> 1)), -1);
+                next.ids[pos] = productId;
+                next.quantities[pos] = quantity;
+                next.pricesCents[pos] = priceCents;
+                next.vendorIds[pos] = Math.max(NO_VENDOR, vendorId);
+                columns = new Columns(next.ids, next.quantities, next.pricesCents, next.vendorIds, n + 1);
+            }
+            raiseMaxVendor(vendorId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // --- Scans ---
+
+    /** Number of slices a scan over n rows is split into for the common fork/join pool. */
+    private static int slices(int n) {
+        return Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, n / MIN_SLICE));
+    }
+
+    /** Ids of the products with fewer than threshold units, in id order. */
+    public int[] lowStock(int threshold) {
+        Columns c = columns;
+        int[] ids = c.ids;
+        int[] quantities = c.quantities;
+        int n = c.size;
+        int slices = slices(n);
+        // Pass 1 counts per slice, pass 2 writes each slice's hits at its offset: no locks, no boxing.
+        int[] counts = new int[slices + 1];
+        IntStream.range(0, slices).parallel().forEach(s -> {
+            int count = 0;
+            for (int i = s * n / slices, end = (s + 1) * n / slices; i < end; i++) {
+                int q = quantities[i];
+                if (q != DELETED && q < threshold) {
+                    count++;
+                }
+            }
+            counts[s + 1] = count;
+        });
+        for (int s = 0; s < slices; s++) {
+            counts[s + 1] += counts[s];
+        }
+        int[] result = new int[counts[slices]];
+        int[] written = new int[slices];
+        IntStream.range(0, slices).parallel().forEach(s -> {
+            int out = counts[s];
+            int limit = counts[s + 1];
+            for (int i = s * n / slices, end = (s + 1) * n / slices; i < end && out < limit; i++) {
+                int q = quantities[i];
+                if (q != DELETED && q < threshold) {
+                    result[out++] = ids[i];
+                }
+            }
+            written[s] = out - counts[s];
+        });
+        // A sale between the passes can leave a slice with fewer hits than counted; close the gaps.
+        int total = 0;
+        for (int s = 0; s < slices; s++) {
+            System.arraycopy(result, counts[s], result, total, written[s]);
+            total += written[s];
+        }
+        return total == result.length ? result : Arrays.copyOf(result, total);
+    }
+
+    /** Total value of the stock on hand, sum of quantity * price, in cents. */
+    public long stockValueCents() {
+        Columns c = columns;
+        int[] quantities = c.quantities;
+        long[] prices = c.pricesCents;
+        int n = c.size;
+        int slices = slices(n);
+        return IntStream.range(0, slices).parallel().mapToLong(s -> {
+            long sum = 0;
+            for (int i = s * n / slices, end = (s + 1) * n / slices; i < end; i++) {
+                int q = quantities[i];
+                if (q != DELETED && q > 0) {
+                    sum += q * prices[i];
+                }
+            }
+            return sum;
+        }).sum();
+    }
+
+    /** Per-vendor totals, indexed by vendor id (index NO_VENDOR collects products without a vendor). */
+    public static final class VendorTotals {
+        public final int[] products;
+        public final long[] units;
+        public final long[] valueCents;
+        public final int[] lowStockProducts;
+
+        VendorTotals(int vendors) {
+            products = new int[vendors];
+            units = new long[vendors];
+            valueCents = new long[vendors];
+            lowStockProducts = new int[vendors];
+        }
+
+        void add(VendorTotals other) {
+            for (int v = 0; v < products.length; v++) {
+                products[v] += other.products[v];
+                units[v] += other.units[v];
+                valueCents[v] += other.valueCents[v];
+                lowStockProducts[v] += other.lowStockProducts[v];
+            }
+        }
+    }
+
+    /**
+     * Products, units, stock value and products below threshold for every vendor, in one parallel
+     * pass. Each slice accumulates into its own arrays, merged at the end.
+     */
+    public VendorTotals vendorTotals(int threshold) {
+        Columns c = columns;
+        int[] quantities = c.quantities;
+        long[] prices = c.pricesCents;
+        int[] vendors = c.vendorIds;
+        int n = c.size;
+        int vendorSlots = maxVendorId + 1; // a vendor id raised after this read is counted under NO_VENDOR
+        int slices = slices(n);
+        VendorTotals[] partial = new VendorTotals[slices];
+        IntStream.range(0, slices).parallel().forEach(s -> {
+            VendorTotals t = new VendorTotals(vendorSlots);
+            for (int i = s * n / slices, end = (s + 1) * n / slices; i < end; i++) {
+                int q = quantities[i];
+                if (q == DELETED) {
+                    continue;
+                }
+                int v = vendors[i];
+                if (v >= vendorSlots) {
+                    v = NO_VENDOR;
+                }
+                t.products[v]++;
+                if (q > 0) {
+                    t.units[v] += q;
+                    t.valueCents[v] += q * prices[i];
+                }
+                if (q < threshold) {
+                    t.lowStockProducts[v]++;
+                }
+            }
+            partial[s] = t;
+        });
+        VendorTotals total = partial[0];
+        for (int s = 1; s < slices; s++) {
+            total.add(partial[s]);
+        }
+        return total;
+    }
+
+    /** Stock on hand of a product in the snapshot, or -1 if it is not there. */
+    public int quantityOf(int productId) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, productId);
+            int q = i < 0 ? DELETED : (int) INTS.getVolatile(c.quantities, i);
+            return q == DELETED ? -1 : q;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("loaded=%b, products=%d, highestVendorId=%d", loaded, columns.size, maxVendorId);
+    }
+}
@@ -0,0 +1,252 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and error/rollback counters for every public GroceryManagementApp operation,
+ * plus per-phase histograms for a single sale (connect, price lookup, quantity update, credit update,
+ * insert, summary update, commit), so the slow step of makeTransaction can be found in production.
+ * Recording is allocation-free (see LatencyHistogram). The numbers are available as a text report
+ * (menu option, optional periodic dump to stderr) and through JMX as "grocery:type=OperationMetrics".
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+
+    /** Public operations of GroceryManagementApp. Async and throwing variants record under the same name. */
+    public enum Op {
+        MAKE_TRANSACTION("makeTransaction"),
+        MAKE_BASKET_TRANSACTION("makeBasketTransaction"),
+        DISPLAY_RECORDS("displayRecords"),
+        DISPLAY_RECORDS_PAGE("displayRecordsPage"),
+        UPDATE_REWARDS("updateRewards"),
+        ADD_CUSTOMER("addCustomer"),
+        ADD_VENDOR("addVendor"),
+        ADD_PRODUCT("addProduct"),
+        ADD_COUPON("addCoupon"),
+        UPDATE_CUSTOMER("updateCustomer"),
+        UPDATE_VENDOR("updateVendor"),
+        UPDATE_PRODUCT("updateProduct"),
+        UPDATE_COUPON("updateCoupon"),
+        DELETE_CUSTOMER("deleteCustomer"),
+        DELETE_VENDOR("deleteVendor"),
+        DELETE_PRODUCT("deleteProduct"),
+        DELETE_COUPON("deleteCoupon"),
+        BULK_UPDATE("bulkUpdate");
+
+        final String displayName;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rollbacks = new LongAdder();
+
+        Op(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    /** Phases of a single sale on the one-transaction-per-sale path (and the group committer's per-sale fallback). */
+    public enum Phase {
+        CONNECT("connect"),
+        PRICE_LOOKUP("priceLookup"),
+        QUANTITY_UPDATE("quantityUpdate"),
+        CREDIT_UPDATE("creditUpdate"),
+        INSERT("insert"),
+        AGGREGATES("aggregates"),
+        COMMIT("commit");
+
+        final String displayName;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private static final String OBJECT_NAME = "grocery:type=OperationMetrics";
+    private static final OperationMetrics INSTANCE = new OperationMetrics();
+    private static ScheduledExecutorService dumper;
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Could not register " + OBJECT_NAME + " with JMX: " + e.getMessage());
+        }
+    }
+
+    private OperationMetrics() {
+    }
+
+    /** Start timestamp to pass to record or recordPhase. */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void record(Op op, long startNanos) {
+        op.latency.record(System.nanoTime() - startNanos);
+    }
+
+    public static void recordPhase(Phase phase, long startNanos) {
+        phase.latency.record(System.nanoTime() - startNanos);
+    }
+
+    public static void error(Op op) {
+        op.errors.increment();
+    }
+
+    public static void rollback(Op op) {
+        op.rollbacks.increment();
+    }
+
+    public static long rollbackCount(Op op) {
+        return op.rollbacks.sum();
+    }
+
+    /** Text table of every operation and sale phase that has been recorded at least once, in milliseconds. */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-32s %10s %9s %9s %9s %9s %9s %8s %9s%n",
+                "operation", "count", "mean", "p50", "p99", "p999", "max", "errors", "rollbacks"));
+        for (Op op : Op.values()) {
+            if (op.latency.count() > 0 || op.errors.sum() > 0) {
+                appendRow(sb, op.displayName, op.latency);
+                sb.append(String.format(" %8d %9d%n", op.errors.sum(), op.rollbacks.sum()));
+            }
+        }
+        for (Phase phase : Phase.values()) {
+            if (phase.latency.count() > 0) {
+                appendRow(sb, Op.MAKE_TRANSACTION.displayName + "." + phase.displayName, phase.latency);
+                sb.append(String.format("%n"));
+            }
+        }
+        sb.append("transaction retries: ").append(TransactionRetry.retryCount());
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(String.format("%-32s %10d %9.3f %9.3f %9.3f %9.3f %9.3f", name, h.count(), h.meanNanos() / 1e6,
+                h.percentileNanos(50) / 1e6, h.percentileNanos(99) / 1e6, h.percentileNanos(99.9) / 1e6,
+                h.maxNanos() / 1e6));
+    }
+
+    /** Prints the report to stderr every intervalMillis until stopPeriodicDump() is called. */
+    public static synchronized void startPeriodicDump(long intervalMillis) {
+        stopPeriodicDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "operation-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> System.err.println("--- Operation metrics ---\n" + report()),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    public static void resetAll() {
+        for (Op op : Op.values()) {
+            op.latency.reset();
+            op.errors.reset();
+            op.rollbacks.reset();
+        }
+        for (Phase phase : Phase.values()) {
+            phase.latency.reset();
+        }
+    }
+
+    // --- JMX ---
+
+    private static LatencyHistogram histogram(String name) {
+        for (Op op : Op.values()) {
+            if (op.displayName.equals(name)) {
+                return op.latency;
+            }
+        }
+        String prefix = Op.MAKE_TRANSACTION.displayName + ".";
+        for (Phase phase : Phase.values()) {
+            if ((prefix + phase.displayName).equals(name)) {
+                return phase.latency;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation or phase: " + name);
+    }
+
+    private static Op operation(String name) {
+        for (Op op : Op.values()) {
+            if (op.displayName.equals(name)) {
+                return op;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+    @Override
+    public String[] getNames() {
+        String[] names = new String[Op.values().length + Phase.values().length];
+        int i = 0;
+        for (Op op : Op.values()) {
+            names[i++] = op.displayName;
+        }
+        for (Phase phase : Phase.values()) {
+            names[i++] = Op.MAKE_TRANSACTION.displayName + "." + phase.displayName;
+        }
+        return names;
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    @Override
+    public long getCount(String name) {
+        return histogram(name).count();
+    }
+
+    @Override
+    public double getP50Millis(String name) {
+        return histogram(name).percentileNanos(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis(String name) {
+        return histogram(name).percentileNanos(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis(String name) {
+        return histogram(name).percentileNanos(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis(String name) {
+        return histogram(name).maxNanos() / 1e6;
+    }
+
+    @Override
+    public long getErrors(String operation) {
+        return operation(operation).errors.sum();
+    }
+
+    @Override
+    public long getRollbacks(String operation) {
+        return operation(operation).rollbacks.sum();
+    }
+
+    @Override
+    public void reset() {
+        resetAll();
+    }
+}
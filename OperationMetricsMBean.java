@@ -0,0 +1,26 @@
+/**
+ * JMX view of OperationMetrics, registered as "grocery:type=OperationMetrics".
+ * Names are the operation names (e.g. "makeTransaction") or "makeTransaction.<phase>" for sale phases.
+ */
+public interface OperationMetricsMBean {
+
+    String[] getNames();
+
+    String getReport();
+
+    long getCount(String name);
+
+    double getP50Millis(String name);
+
+    double getP99Millis(String name);
+
+    double getP999Millis(String name);
+
+    double getMaxMillis(String name);
+
+    long getErrors(String operation);
+
+    long getRollbacks(String operation);
+
+    void reset();
+}
@@ -0,0 +1,235 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process cache of product prices and names, keyed by the primitive product id.
+ * Entries live in parallel arrays of an open-addressing (linear probing) table, so lookups
+ * never box an Integer or allocate. The cache is bounded: once full, a CLOCK sweep evicts an
+ * entry that has not been read since the hand last passed it. Entries also expire after a TTL.
+ */
+public class ProductCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final int mask;
+
+    private final int[] keys;
+    private final boolean[] used;
+    private final boolean[] referenced;
+    private final double[] prices;
+    private final String[] names;
+    private final long[] expiresAt;
+    private int size;
+    private int clockHand;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Bumped on every invalidation so a load that raced with a write does not re-insert a stale row.
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ProductCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        // Keep the load factor at or below 0.5 so probe chains stay short.
+        int capacity = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new int[capacity];
+        this.used = new boolean[capacity];
+        this.referenced = new boolean[capacity];
+        this.prices = new double[capacity];
+        this.names = new String[capacity];
+        this.expiresAt = new long[capacity];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing spreads sequential AUTO_INCREMENT ids
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the slot holding key, or -1. Caller must hold the lock. */
+    private int find(int key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Returns the cached price, or NaN if the product is not cached or its entry has expired. */
+    public double price(int productId) {
+        lock.readLock().lock();
+        try {
+            int slot = find(productId);
+            if (slot >= 0 && System.nanoTime() - expiresAt[slot] < 0) {
+                referenced[slot] = true;
+                hits.increment();
+                return prices[slot];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /** Returns the cached name, or null if the product is not cached or its entry has expired. */
+    public String name(int productId) {
+        lock.readLock().lock();
+        try {
+            int slot = find(productId);
+            if (slot >= 0 && System.nanoTime() - expiresAt[slot] < 0) {
+                referenced[slot] = true;
+                return names[slot];
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Current invalidation generation; pass it to put() after loading from the database. */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a product loaded from the database. The entry is dropped if any invalidation happened
+     * since loadGeneration was read, because the loaded row may predate that write.
+     */
+    public void put(int productId, double price, String name, long loadGeneration) {
+        lock.writeLock().lock();
+        try {
+            if (generation.get() != loadGeneration) {
+                return;
+            }
+            int slot = find(productId);
+            if (slot < 0) {
+                if (size >= maxEntries) {
+                    evictOne();
+                }
+                slot = hash(productId) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = productId;
+                size++;
+            }
+            prices[slot] = price;
+            names[slot] = name;
+            expiresAt[slot] = System.nanoTime() + ttlNanos;
+            referenced[slot] = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Drops a product, e.g. after the app's own updateProduct/deleteProduct wrote to it. */
+    public void invalidate(int productId) {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            int slot = find(productId);
+            if (slot >= 0) {
+                remove(slot);
+                invalidations.increment();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            for (int i = 0; i <= mask; i++) {
+                used[i] = false;
+                names[i] = null;
+            }
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** CLOCK eviction: expired entries go first, otherwise the first entry not read since the last sweep. */
+    private void evictOne() {
+        long now = System.nanoTime();
+        while (true) {
+            int slot = clockHand;
+            clockHand = (clockHand + 1) & mask;
+            if (!used[slot]) {
+                continue;
+            }
+            if (now - expiresAt[slot] >= 0) {
+                expirations.increment();
+                remove(slot);
+                return;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            evictions.increment();
+            remove(slot);
+            return;
+        }
+    }
+
+    /** Backward-shift deletion, so the table never accumulates tombstones. */
+    private void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry back if its home slot is not cyclically within (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                referenced[hole] = referenced[next];
+                prices[hole] = prices[next];
+                names[hole] = names[next];
+                expiresAt[hole] = expiresAt[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+        names[hole] = null;
+        size--;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, expirations=%d, invalidations=%d",
+                size(), maxEntries, hits.sum(), misses.sum(), hitRate() * 100, evictions.sum(),
+                expirations.sum(), invalidations.sum());
+    }
+}
@@ -0,0 +1,363 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Deletes a customer or a product together with its dependent rows in the background, so a long
+ * history never turns into one cascading DELETE that holds locks across checkout for seconds.
+ * Dependent rows go first, chunkSize at a time in primary key order with a short commit per chunk
+ * and a pause of pauseMillis between chunks; the parent row is deleted last. From the moment a purge
+ * is registered, every sale path rejects sales of the customer or product (see rejectPurging), so
+ * nothing is charged or taken from stock for a sale whose record the purge would then delete.
+ * Each chunk of Transactions rows is also taken out of the daily sales summaries (DailyProductSales,
+ * DailyCustomerSales) in the same transaction, so summaries and reports stop counting the deleted
+ * sales -- the other side's rows included -- and still match SalesAggregates.rebuild().
+ *
+ * Each purge is recorded in PurgeJobs (with its running row count) before it starts, updated in
+ * every chunk's transaction and removed together with the parent row, so after a crash or restart
+ * resumePending() simply picks the remaining purges up again -- a chunk only ever deletes rows
+ * that are still there. Purges run one at a time on a single daemon thread.
+ */
+public class PurgeWorker implements AutoCloseable {
+
+    /** The kinds of row that can be purged: the parent table and its dependents, in deletion order. */
+    public enum Entity {
+        CUSTOMER("Customers", "customer_id",
+                new String[][] {{"Transactions", "transaction_id"}, {"Rewards", "reward_id"}, {"Credit", "customer_id"}}),
+        PRODUCT("Products", "product_id",
+                new String[][] {{"Transactions", "transaction_id"}});
+
+        final String table;
+        final String key;
+        final String[][] dependents; // {table, primary key}; each references the parent through key
+
+        /** The dependent whose rows are counted in the daily sales summaries. */
+        static final String SUMMARIZED = "Transactions";
+
+        Entity(String table, String key, String[][] dependents) {
+            this.table = table;
+            this.key = key;
+            this.dependents = dependents;
+        }
+    }
+
+    /** Progress of one purge, readable while it runs. */
+    public static final class Progress {
+        public final Entity entity;
+        public final int id;
+        volatile long rowsDeleted;
+        volatile String step = "queued";
+
+        Progress(Entity entity, int id, long rowsDeleted) {
+            this.entity = entity;
+            this.id = id;
+            this.rowsDeleted = rowsDeleted;
+        }
+
+        public long rowsDeleted() {
+            return rowsDeleted;
+        }
+
+        @Override
+        public String toString() {
+            return entity.name().toLowerCase() + " " + id + ": " + step + ", " + rowsDeleted + " rows deleted";
+        }
+    }
+
+    private static final String REGISTER_SQL = "INSERT INTO PurgeJobs (entity, entity_id, rows_deleted) VALUES (?, ?, 0)"
+            + " ON DUPLICATE KEY UPDATE rows_deleted = rows_deleted";
+    private static final String ADVANCE_SQL = "UPDATE PurgeJobs SET rows_deleted = rows_deleted + ? WHERE entity = ? AND entity_id = ?";
+    private static final String FINISH_SQL = "DELETE FROM PurgeJobs WHERE entity = ? AND entity_id = ?";
+    private static final String PENDING_SQL = "SELECT entity, entity_id, rows_deleted FROM PurgeJobs ORDER BY entity, entity_id";
+
+    /**
+     * The customers and products among the given ids with a registered purge, as "CUSTOMER:id" and
+     * "PRODUCT:id". Sale paths call this first in their transaction. The read is a locking read of the
+     * PurgeJobs keys: it sees a registration committed at any time before it, and on InnoDB its gap
+     * locks on the keys it did not find make a concurrent registration wait until the sale has
+     * committed -- so a sale either lands before the purge starts or is rejected.
+     */
+    static Set<String> purging(Connection conn, int[] customerIds, int[] productIds) throws SQLException {
+        if (customerIds.length == 0 && productIds.length == 0) {
+            return Set.of();
+        }
+        StringBuilder query = new StringBuilder("SELECT entity, entity_id FROM PurgeJobs WHERE ");
+        if (customerIds.length > 0) {
+            query.append("(entity = 'CUSTOMER' AND entity_id IN (").append(GroceryManagementApp.placeholders(customerIds.length)).append("))");
+        }
+        if (productIds.length > 0) {
+            query.append(customerIds.length > 0 ? " OR " : "")
+                    .append("(entity = 'PRODUCT' AND entity_id IN (").append(GroceryManagementApp.placeholders(productIds.length)).append("))");
+        }
+        query.append(" FOR UPDATE");
+        Set<String> found = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+            int param = 1;
+            for (int id : customerIds) {
+                stmt.setInt(param++, id);
+            }
+            for (int id : productIds) {
+                stmt.setInt(param++, id);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    found.add(rs.getString(1) + ":" + rs.getInt(2));
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Fails with SQLDataException if the customer or any of the products is being purged; see purging. */
+    static void rejectPurging(Connection conn, int customerId, int... productIds) throws SQLException {
+        SQLDataException rejection = rejection(purging(conn, new int[] {customerId}, productIds), customerId, productIds);
+        if (rejection != null) {
+            throw rejection;
+        }
+    }
+
+    /** The error for a sale of the customer and products if purging (from purging()) names any of them, else null. */
+    static SQLDataException rejection(Set<String> purging, int customerId, int... productIds) {
+        if (purging.contains(Entity.CUSTOMER.name() + ":" + customerId)) {
+            return new SQLDataException("Customer " + customerId + " is being deleted.");
+        }
+        for (int productId : productIds) {
+            if (purging.contains(Entity.PRODUCT.name() + ":" + productId)) {
+                return new SQLDataException("Product " + productId + " is being deleted.");
+            }
+        }
+        return null;
+    }
+
+    private final DataSource dataSource;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final IntConsumer onProductDeleted;
+    private final ExecutorService worker;
+    private final Map<String, Progress> active = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Long>> futures = new ConcurrentHashMap<>();
+
+    /** onProductDeleted is called after a product row is gone, e.g. to drop it from caches. */
+    public PurgeWorker(DataSource dataSource, int chunkSize, long pauseMillis, IntConsumer onProductDeleted) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.dataSource = dataSource;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+        this.onProductDeleted = onProductDeleted;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "background-purge");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Records the purge durably and queues it. The future completes with the number of rows this run
+     * deleted (parent included) once the parent row is gone. Purging something already queued returns the same future.
+     */
+    public CompletableFuture<Long> purge(Entity entity, int id) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(REGISTER_SQL)) {
+            stmt.setString(1, entity.name());
+            stmt.setInt(2, id);
+            stmt.executeUpdate();
+        }
+        return schedule(new Progress(entity, id, 0));
+    }
+
+    /** Queues every purge left unfinished by an earlier run; returns how many there were. */
+    public int resumePending() throws SQLException {
+        List<Progress> pending = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(PENDING_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                pending.add(new Progress(Entity.valueOf(rs.getString(1)), rs.getInt(2), rs.getLong(3)));
+            }
+        }
+        for (Progress progress : pending) {
+            schedule(progress);
+        }
+        return pending.size();
+    }
+
+    private CompletableFuture<Long> schedule(Progress progress) {
+        String name = progress.entity.name() + ":" + progress.id;
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        CompletableFuture<Long> existing = futures.putIfAbsent(name, future);
+        if (existing != null) {
+            return existing;
+        }
+        active.put(name, progress);
+        try {
+            worker.execute(() -> {
+                try {
+                    future.complete(run(progress));
+                } catch (SQLException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    active.remove(name);
+                    futures.remove(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            active.remove(name);
+            futures.remove(name);
+            future.completeExceptionally(new SQLException("Purge worker is shut down; the purge resumes on the next start.", e));
+        }
+        return future;
+    }
+
+    private long run(Progress progress) throws SQLException {
+        Entity entity = progress.entity;
+        long before = progress.rowsDeleted;
+        for (String[] dependent : entity.dependents) {
+            progress.step = "deleting from " + dependent[0];
+            boolean summarized = dependent[0].equals(Entity.SUMMARIZED);
+            String select = "SELECT " + dependent[1]
+                    + (summarized ? ", DATE(created_at), customer_id, product_id, quantity" : "")
+                    + " FROM " + dependent[0] + " WHERE " + entity.key + " = ? LIMIT ?";
+            String delete = "DELETE FROM " + dependent[0] + " WHERE " + dependent[1] + " = ?";
+            int deleted;
+            do {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new SQLException("Purge of " + progress + " interrupted; it resumes on the next start.");
+                }
+                deleted = deleteChunk(progress, select, delete, summarized);
+                progress.rowsDeleted += deleted;
+                if (deleted > 0 && pauseMillis > 0) {
+                    try {
+                        Thread.sleep(pauseMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } while (deleted == chunkSize);
+        }
+
+        progress.step = "deleting from " + entity.table;
+        int[] parent = new int[1];
+        TransactionRetry.inTransaction(dataSource, conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + entity.table + " WHERE " + entity.key + " = ?")) {
+                stmt.setInt(1, progress.id);
+                parent[0] = stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(FINISH_SQL)) {
+                stmt.setString(1, entity.name());
+                stmt.setInt(2, progress.id);
+                stmt.executeUpdate();
+            }
+        });
+        progress.rowsDeleted += parent[0];
+        progress.step = "done";
+        if (entity == Entity.PRODUCT && onProductDeleted != null) {
+            onProductDeleted.accept(progress.id);
+        }
+        return progress.rowsDeleted - before;
+    }
+
+    /**
+     * Deletes up to chunkSize dependent rows, by primary key in ascending order, and counts them in
+     * PurgeJobs in the same short transaction. For summarized rows the select also returns day,
+     * customer, product and quantity, and the deleted rows are subtracted from the summaries.
+     * Returns how many were deleted.
+     */
+    private int deleteChunk(Progress progress, String select, String delete, boolean summarized) throws SQLException {
+        int[] count = new int[1];
+        TransactionRetry.inTransaction(dataSource, conn -> {
+            List<Integer> ids = new ArrayList<>(chunkSize);
+            List<Date> days = new ArrayList<>();
+            List<int[]> sales = new ArrayList<>(); // {customer_id, product_id, quantity}, 0 for NULL ids
+            try (PreparedStatement stmt = conn.prepareStatement(select)) {
+                stmt.setInt(1, progress.id);
+                stmt.setInt(2, chunkSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        if (summarized) {
+                            days.add(rs.getDate(2));
+                            sales.add(new int[] {rs.getInt(3), rs.getInt(4), rs.getInt(5)});
+                        }
+                    }
+                }
+            }
+            count[0] = ids.size();
+            if (ids.isEmpty()) {
+                return;
+            }
+            ids.sort(null);
+            try (PreparedStatement stmt = conn.prepareStatement(delete)) {
+                for (int id : ids) {
+                    stmt.setInt(1, id);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            if (summarized) {
+                int n = sales.size();
+                int[] customerIds = new int[n];
+                int[] productIds = new int[n];
+                int[] units = new int[n];
+                for (int i = 0; i < n; i++) {
+                    customerIds[i] = sales.get(i)[0];
+                    productIds[i] = sales.get(i)[1];
+                    units[i] = sales.get(i)[2];
+                }
+                SalesAggregates.removeAll(conn, days.toArray(new Date[0]), customerIds, productIds, units);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(ADVANCE_SQL)) {
+                stmt.setLong(1, ids.size());
+                stmt.setString(2, progress.entity.name());
+                stmt.setInt(3, progress.id);
+                stmt.executeUpdate();
+            }
+        });
+        return count[0];
+    }
+
+    /** The purges queued or running right now. */
+    public List<Progress> activePurges() {
+        return new ArrayList<>(active.values());
+    }
+
+    /**
+     * Stops after the current chunk. Unfinished purges stay in PurgeJobs and resume with resumePending().
+     */
+    @Override
+    public void close() {
+        worker.shutdownNow();
+        try {
+            worker.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Queued purges that never started.
+        for (CompletableFuture<Long> future : futures.values()) {
+            future.completeExceptionally(new SQLException("Purge worker is shut down; the purge resumes on the next start."));
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<Progress> purges = activePurges();
+        return purges.isEmpty() ? "no purges running" : purges.toString();
+    }
+}
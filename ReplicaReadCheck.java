@@ -0,0 +1,95 @@
+import java.sql.*;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * End-to-end check of read routing (GroceryManagementApp.getReadConnection): with replicas configured
+ * and usable, every read must be served by a replica, never by the primary, and MySQL replica URLs must
+ * carry useCursorFetch so streaming reads stay streaming.
+ *
+ * Usage: java ReplicaReadCheck [reads=1000]
+ * Locally, against two independent embedded databases (no replication, so the lag check is off):
+ *   java -cp .:h2.jar -Dgrocery.db.user=sa -Dgrocery.db.password= -Dgrocery.db.replicaLagQuery=
+ *        '-Dgrocery.db.url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1'
+ *        '-Dgrocery.db.replicaUrls=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1' ReplicaReadCheck
+ * With an empty lag query the databases are taken to be independent, so a marker row written to the
+ * primary must not be visible through a read connection either. Exits with status 1 if a check fails.
+ */
+public class ReplicaReadCheck {
+
+    public static void main(String[] args) throws Exception {
+        int reads = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        boolean independent = "".equals(System.getProperty("grocery.db.replicaLagQuery"));
+        boolean ok = true;
+
+        List<String> urls = GroceryManagementApp.getReplicaUrls();
+        if (urls.isEmpty()) {
+            System.err.println("FAIL: no replicas configured (-Dgrocery.db.replicaUrls=...).");
+            System.exit(1);
+        }
+        for (String url : urls) {
+            if (url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true")) {
+                System.err.println("FAIL: " + url + " lacks useCursorFetch=true; replica reads would not stream.");
+                ok = false;
+            }
+        }
+
+        // Give the first lag check time to run, so a replica it rejects is reported rather than hidden.
+        Thread.sleep(2 * Long.getLong("grocery.db.replicaCheckIntervalMs", 1_000L));
+
+        long primaryBefore = GroceryManagementApp.getPrimaryReadCount();
+        for (int i = 0; i < reads; i++) {
+            try (Connection conn = GroceryManagementApp.getReadConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT 1")) {
+                rs.next();
+            }
+        }
+        long onPrimary = GroceryManagementApp.getPrimaryReadCount() - primaryBefore;
+        System.out.println(reads + " reads, " + onPrimary + " served by the primary");
+        System.out.println("Read routing: " + GroceryManagementApp.getReplicaStats());
+        if (onPrimary > 0) {
+            System.err.println("FAIL: reads fell back to the primary; see the replica state above.");
+            ok = false;
+        }
+
+        if (independent) {
+            ok &= markerStaysOnPrimary();
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    /** Writes a marker row through the primary and checks that a read connection does not see it. */
+    private static boolean markerStaysOnPrimary() throws SQLException {
+        String marker = UUID.randomUUID().toString();
+        try (Connection conn = GroceryManagementApp.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ReplicaCheck (marker VARCHAR(64) PRIMARY KEY)");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO ReplicaCheck (marker) VALUES (?)")) {
+                stmt.setString(1, marker);
+                stmt.executeUpdate();
+            }
+        }
+        boolean visible;
+        try (Connection conn = GroceryManagementApp.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM ReplicaCheck WHERE marker = ?")) {
+            stmt.setString(1, marker);
+            try (ResultSet rs = stmt.executeQuery()) {
+                visible = rs.next() && rs.getLong(1) > 0;
+            }
+        } catch (SQLException e) {
+            visible = false; // the replica has no ReplicaCheck table at all
+        }
+        try (Connection conn = GroceryManagementApp.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM ReplicaCheck WHERE marker = ?")) {
+            stmt.setString(1, marker);
+            stmt.executeUpdate();
+        }
+        if (visible) {
+            System.err.println("FAIL: a row written to the primary was read back through a read connection.");
+        }
+        return !visible;
+    }
+}
@@ -0,0 +1,219 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes read-only work to replica pools and everything else to the primary pool. Writes and any
+ * read that must see the latest data keep using the primary (GroceryManagementApp.getConnection());
+ * reports, exports and history pages borrow through getReadConnection(), which picks a replica
+ * round-robin or by fewest borrowed connections.
+ *
+ * A background check measures every replica's lag with lagQuery (one row whose first column is the
+ * lag in seconds, or one of the MySQL replica status columns below; NULL means replication is
+ * stopped). Replicas lagging more than maxLagMillis, failing the check, or failing to hand out a
+ * connection are skipped until a later check passes; with no usable replica, reads go to the
+ * primary. An empty lagQuery treats replicas as never stale, e.g. for two embedded databases.
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+    public enum Selection { ROUND_ROBIN, LEAST_LOADED }
+
+    /** Default lag query for MySQL replicas (8.0.22+; older servers report Seconds_Behind_Master). */
+    public static final String MYSQL_LAG_QUERY = "SHOW REPLICA STATUS";
+
+    private static final String[] LAG_COLUMNS = {"Seconds_Behind_Source", "Seconds_Behind_Master"};
+
+    private static final class Replica {
+        final String name;
+        final ConnectionPool pool;
+        volatile boolean usable = true;
+        volatile long lagMillis;
+        volatile String lastProblem = "";
+        final LongAdder reads = new LongAdder();
+
+        Replica(String name, ConnectionPool pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+    }
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Selection selection;
+    private final long maxLagMillis;
+    private final String lagQuery;
+    private final ScheduledExecutorService checker;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * replicaPools may be empty, in which case every read goes to the primary. Replicas are checked
+     * every checkIntervalMillis; they are assumed usable until the first check says otherwise.
+     */
+    public ReplicaRouter(ConnectionPool primary, List<String> replicaNames, List<ConnectionPool> replicaPools,
+                         Selection selection, long maxLagMillis, String lagQuery, long checkIntervalMillis) {
+        this.primary = primary;
+        for (int i = 0; i < replicaPools.size(); i++) {
+            replicas.add(new Replica(replicaNames.get(i), replicaPools.get(i)));
+        }
+        this.selection = selection;
+        this.maxLagMillis = maxLagMillis;
+        this.lagQuery = lagQuery;
+        if (replicas.isEmpty()) {
+            checker = null;
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-lag-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A connection for read-only work: from a usable replica when there is one, else from the primary.
+     * A replica that cannot hand out a connection is marked unusable and the next one is tried.
+     */
+    public Connection getReadConnection() throws SQLException {
+        int n = replicas.size();
+        if (n > 0) {
+            for (int i = 0; i < n; i++) {
+                // Round-robin takes a new turn per candidate, so a skipped replica's share is spread evenly.
+                int turn = Math.floorMod(nextReplica.getAndIncrement(), n);
+                Replica replica = selection == Selection.LEAST_LOADED ? leastLoaded(turn) : replicas.get(turn);
+                if (replica == null) {
+                    break;
+                }
+                if (!replica.usable) {
+                    continue;
+                }
+                try {
+                    Connection conn = replica.pool.getConnection();
+                    replica.reads.increment();
+                    return conn;
+                } catch (SQLException e) {
+                    markUnusable(replica, e.getMessage());
+                }
+            }
+            fallbacks.increment();
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /** The usable replica with the fewest borrowed connections (ties go round-robin), or null. */
+    private Replica leastLoaded(int start) {
+        Replica best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            int active = replica.pool.activeCount();
+            if (replica.usable && active < bestActive) {
+                best = replica;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    private void markUnusable(Replica replica, String problem) {
+        if (replica.usable) {
+            System.err.println("Replica " + replica.name + " taken out of read rotation: " + problem);
+        }
+        replica.usable = false;
+        replica.lastProblem = problem;
+    }
+
+    private void checkAll() {
+        for (Replica replica : replicas) {
+            try {
+                long lag = lagMillis(replica);
+                replica.lagMillis = lag;
+                if (lag > maxLagMillis) {
+                    markUnusable(replica, "lag " + lag + " ms exceeds " + maxLagMillis + " ms");
+                } else {
+                    if (!replica.usable) {
+                        System.err.println("Replica " + replica.name + " back in read rotation (lag " + lag + " ms).");
+                    }
+                    replica.usable = true;
+                    replica.lastProblem = "";
+                }
+            } catch (SQLException | RuntimeException e) {
+                markUnusable(replica, e.getMessage());
+            }
+        }
+    }
+
+    /** Replication lag of one replica in milliseconds (Long.MAX_VALUE if replication is stopped). */
+    private long lagMillis(Replica replica) throws SQLException {
+        try (Connection conn = replica.pool.getConnection()) {
+            if (lagQuery.isEmpty()) {
+                if (!conn.isValid(2)) {
+                    throw new SQLException("connection is not valid");
+                }
+                return 0L;
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    throw new SQLException("not configured as a replica (no rows from " + lagQuery + ")");
+                }
+                int column = lagColumn(rs.getMetaData());
+                long seconds = rs.getLong(column);
+                return rs.wasNull() ? Long.MAX_VALUE : seconds * 1000L;
+            }
+        }
+    }
+
+    private static int lagColumn(ResultSetMetaData meta) throws SQLException {
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            for (String name : LAG_COLUMNS) {
+                if (name.equalsIgnoreCase(meta.getColumnLabel(i))) {
+                    return i;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /** Reads that went to the primary, whether by fallback or because there are no replicas. */
+    long primaryReads() {
+        return primaryReads.sum();
+    }
+
+    /** Stops the lag check and closes the replica pools (the primary belongs to the caller). */
+    @Override
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("selection=%s, maxLag=%dms, primaryReads=%d, fallbacks=%d",
+                selection, maxLagMillis, primaryReads.sum(), fallbacks.sum()));
+        for (Replica replica : replicas) {
+            sb.append(String.format("; %s: %s, lag=%s, active=%d, reads=%d%s", replica.name,
+                    replica.usable ? "usable" : "skipped",
+                    replica.lagMillis == Long.MAX_VALUE ? "stopped" : replica.lagMillis + "ms",
+                    replica.pool.activeCount(), replica.reads.sum(),
+                    replica.lastProblem.isEmpty() ? "" : " (" + replica.lastProblem + ")"));
+        }
+        return sb.toString();
+    }
+}
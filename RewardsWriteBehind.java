@@ -0,0 +1,157 @@
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind buffer for rewards points. Increments are summed per customer in a LongAdder
+ * (no locks on the hot path), and a background flush writes the net change for every customer
+ * as one batched "UPDATE Rewards SET points = points + ?" in a single transaction. A flush runs
+ * on a timer and whenever the number of buffered increments reaches a threshold, so thousands of
+ * point updates per second become a handful of statements. close() performs a final, committed flush.
+ */
+public class RewardsWriteBehind implements AutoCloseable {
+
+    private static final String UPDATE_POINTS_SQL = "UPDATE Rewards SET points = points + ? WHERE customer_id = ?";
+
+    private final DataSource dataSource;
+    private final long flushThreshold;
+    // Adders are never removed: LongAdder.sumThenReset() drains each cell atomically, so an increment
+    // racing with a flush is either included in it or left for the next one -- never lost.
+    private final ConcurrentHashMap<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+    private final AtomicLong pendingIncrements = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder pointsWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    public RewardsWriteBehind(DataSource dataSource, long flushIntervalMillis, long flushThreshold) {
+        this.dataSource = dataSource;
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rewards-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Buffers an increment; it reaches the database with the next flush. */
+    public void add(int customerId, int points) {
+        pending.computeIfAbsent(customerId, id -> new LongAdder()).add(points);
+        if (pendingIncrements.incrementAndGet() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: close() performs the final flush.
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("Error flushing rewards points (will retry): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every buffered net change in one transaction, in customer id order so concurrent
+     * writers lock Rewards rows in a consistent order. If the write fails the drained amounts are
+     * added back, so they go out with the next flush.
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            pendingIncrements.set(0);
+            Map<Integer, Long> deltas = new TreeMap<>();
+            for (Map.Entry<Integer, LongAdder> e : pending.entrySet()) {
+                long delta = e.getValue().sumThenReset();
+                if (delta != 0) {
+                    deltas.put(e.getKey(), delta);
+                }
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+
+            try {
+                TransactionRetry.inTransaction(dataSource, conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(UPDATE_POINTS_SQL)) {
+                        for (Map.Entry<Integer, Long> e : deltas.entrySet()) {
+                            stmt.setLong(1, e.getValue());
+                            stmt.setInt(2, e.getKey());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                });
+            } catch (SQLException e) {
+                flushFailures.increment();
+                for (Map.Entry<Integer, Long> d : deltas.entrySet()) {
+                    pending.computeIfAbsent(d.getKey(), id -> new LongAdder()).add(d.getValue());
+                    pendingIncrements.incrementAndGet();
+                }
+                throw e;
+            }
+
+            flushes.increment();
+            rowsWritten.add(deltas.size());
+            for (long delta : deltas.values()) {
+                pointsWritten.add(delta);
+            }
+        }
+    }
+
+    /** Number of increments buffered since the last flush. */
+    public long pendingIncrements() {
+        return pendingIncrements.get();
+    }
+
+    /** Number of customers with a non-zero net change waiting to be written. */
+    public int pendingCustomers() {
+        int count = 0;
+        for (LongAdder adder : pending.values()) {
+            if (adder.sum() != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Stops the timer and performs a final flush, so no buffered points are lost on shutdown. */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            System.err.println("Error flushing rewards points on shutdown; " + pendingCustomers()
+                    + " customers' points were not written: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pendingIncrements=%d, pendingCustomers=%d, flushes=%d, rowsWritten=%d, pointsWritten=%d, flushFailures=%d",
+                pendingIncrements(), pendingCustomers(), flushes.sum(), rowsWritten.sum(), pointsWritten.sum(),
+                flushFailures.sum());
+    }
+}
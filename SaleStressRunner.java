@@ -0,0 +1,201 @@
+import java.sql.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-threaded stress check for the concurrent sale path (GroceryManagementApp.executeSale).
+ * For each seller count it seeds fresh products and customers, lets every seller sell single units
+ * of random products (half of them on credit) until all stock is gone, then verifies that no product
+ * went below zero, that exactly the seeded stock was sold, and that Transactions and Credit agree.
+ *
+ * Usage: java -Dgrocery.pool.maxSize=128 SaleStressRunner [sellerCounts=1,16,64,128] [stockPerProduct=2000]
+ *        [products=8] [customers=4]
+ * Point it at a scratch database (-Dgrocery.db.url=...); it inserts rows and leaves them behind.
+ * Exits with status 1 if any invariant is violated.
+ */
+public class SaleStressRunner {
+
+    public static void main(String[] args) throws Exception {
+        String[] sellerCounts = (args.length > 0 ? args[0] : "1,16,64,128").split(",");
+        int stockPerProduct = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int products = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int customers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        System.out.printf("%8s %10s %12s %10s %10s  %s%n", "sellers", "sold", "sales/sec", "retries", "elapsedMs", "result");
+        boolean allOk = true;
+        for (String count : sellerCounts) {
+            allOk &= runRound(Integer.parseInt(count.trim()), stockPerProduct, products, customers);
+        }
+        System.out.println("Pool: " + GroceryManagementApp.getPoolStats());
+        System.exit(allOk ? 0 : 1);
+    }
+
+    private static boolean runRound(int sellers, int stockPerProduct, int productCount, int customerCount)
+            throws SQLException, InterruptedException {
+        int[] productIds = new int[productCount];
+        int[] customerIds = new int[customerCount];
+        double price = 1.25;
+        seed(productIds, customerIds, stockPerProduct, price);
+
+        AtomicIntegerArray soldOut = new AtomicIntegerArray(productCount);
+        LongAdder sold = new LongAdder();
+        LongAdder creditUnits = new LongAdder();
+        LongAdder unexpected = new LongAdder();
+        long retriesBefore = TransactionRetry.retryCount();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[sellers];
+
+        for (int t = 0; t < sellers; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (true) {
+                    int p = pickAvailable(soldOut, random);
+                    if (p < 0) {
+                        return;
+                    }
+                    boolean credit = random.nextBoolean();
+                    int customerId = customerIds[random.nextInt(customerIds.length)];
+                    try {
+                        GroceryManagementApp.executeSale(customerId, productIds[p], credit ? "credit" : "cash", 1);
+                        sold.increment();
+                        if (credit) {
+                            creditUnits.increment();
+                        }
+                    } catch (SQLDataException e) {
+                        soldOut.set(p, 1); // selling one unit only fails once stock has reached zero
+                    } catch (SQLException e) {
+                        unexpected.increment();
+                        System.err.println("Unexpected sale failure: " + e.getMessage());
+                    }
+                }
+            }, "seller-" + t);
+            threads[t].start();
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        String problem = verify(productIds, customerIds, stockPerProduct, sold.sum(), creditUnits.sum() * price);
+        if (problem == null && unexpected.sum() > 0) {
+            problem = unexpected.sum() + " sales failed with non-stock errors";
+        }
+        System.out.printf("%8d %10d %12.0f %10d %10d  %s%n", sellers, sold.sum(),
+                sold.sum() / (elapsedNanos / 1e9), TransactionRetry.retryCount() - retriesBefore,
+                elapsedNanos / 1_000_000, problem == null ? "OK" : "FAILED: " + problem);
+        return problem == null;
+    }
+
+    private static int pickAvailable(AtomicIntegerArray soldOut, ThreadLocalRandom random) {
+        int n = soldOut.length();
+        int first = random.nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int p = (first + i) % n;
+            if (soldOut.get(p) == 0) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private static void seed(int[] productIds, int[] customerIds, int stock, double price) throws SQLException {
+        try (Connection conn = GroceryManagementApp.getConnection()) {
+            int vendorId;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO Vendors (name, phone, email, address) VALUES ('stress vendor', '0', 'stress@example.com', '-')",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                stmt.executeUpdate();
+                vendorId = generatedKey(stmt);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO Products (name, vendor_id, price, quantity) VALUES (?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < productIds.length; i++) {
+                    stmt.setString(1, "stress product " + i);
+                    stmt.setInt(2, vendorId);
+                    stmt.setDouble(3, price);
+                    stmt.setInt(4, stock);
+                    stmt.executeUpdate();
+                    productIds[i] = generatedKey(stmt);
+                }
+            }
+            try (PreparedStatement customer = conn.prepareStatement(
+                    "INSERT INTO Customers (first_name, last_name, email, phone, address) VALUES ('stress', ?, 'stress@example.com', '0', '-')",
+                    Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement credit = conn.prepareStatement("INSERT INTO Credit (customer_id, credit) VALUES (?, 0)")) {
+                for (int i = 0; i < customerIds.length; i++) {
+                    customer.setString(1, "customer " + i);
+                    customer.executeUpdate();
+                    customerIds[i] = generatedKey(customer);
+                    credit.setInt(1, customerIds[i]);
+                    credit.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static int generatedKey(Statement stmt) throws SQLException {
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            keys.next();
+            return keys.getInt(1);
+        }
+    }
+
+    /** Returns null if every invariant holds, otherwise a description of the first violation. */
+    private static String verify(int[] productIds, int[] customerIds, int stock, long sold, double expectedCredit)
+            throws SQLException {
+        try (Connection conn = GroceryManagementApp.getConnection()) {
+            long transactions = 0;
+            try (PreparedStatement qty = conn.prepareStatement("SELECT quantity FROM Products WHERE product_id = ?");
+                 PreparedStatement txCount = conn.prepareStatement("SELECT COUNT(*) FROM Transactions WHERE product_id = ?")) {
+                for (int productId : productIds) {
+                    qty.setInt(1, productId);
+                    try (ResultSet rs = qty.executeQuery()) {
+                        rs.next();
+                        int left = rs.getInt(1);
+                        if (left != 0) {
+                            return "product " + productId + " ended with quantity " + left;
+                        }
+                    }
+                    txCount.setInt(1, productId);
+                    try (ResultSet rs = txCount.executeQuery()) {
+                        rs.next();
+                        transactions += rs.getLong(1);
+                    }
+                }
+            }
+            long seeded = (long) stock * productIds.length;
+            if (sold != seeded) {
+                return "sold " + sold + " units but " + seeded + " were in stock";
+            }
+            if (transactions != sold) {
+                return transactions + " Transactions rows for " + sold + " sales";
+            }
+
+            double credit = 0.0;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT credit FROM Credit WHERE customer_id = ?")) {
+                for (int customerId : customerIds) {
+                    stmt.setInt(1, customerId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                        credit += rs.getDouble(1);
+                    }
+                }
+            }
+            if (Math.abs(credit - expectedCredit) > 0.005) {
+                return "credit charged " + credit + " but credit sales total " + expectedCredit;
+            }
+        }
+        return null;
+    }
+}
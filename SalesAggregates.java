@@ -0,0 +1,232 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summary tables maintained by the sale paths in the same transaction as the sale itself:
+ * DailyProductSales (units and transactions per day and product) and DailyCustomerSales (the same per
+ * day and customer). "Units sold per product today" is then a primary-key lookup instead of a scan of
+ * Transactions. Outstanding credit per customer needs no extra table: Credit already holds the running
+ * total, maintained the same way. rebuild() recomputes both summaries from Transactions if they drift.
+ *
+ * The upserts run after the Transactions insert, product rows before customer rows and each in id
+ * order, so they extend the lock order every sale path already follows.
+ *
+ * Rows are dated by the database clock (CURRENT_DATE, like Transactions.created_at), so "today" must
+ * come from today(conn) rather than the JVM's clock, which may be in another time zone. A sale replayed
+ * from the offline journal passes its recorded sale time instead, which is also its created_at, so
+ * it is counted under DATE(created_at) just as rebuild() would count it.
+ */
+public final class SalesAggregates {
+
+    private static final String UPSERT_PRODUCT_SQL =
+            "INSERT INTO DailyProductSales (sale_date, product_id, units, transactions) VALUES (COALESCE(DATE(?), CURRENT_DATE), ?, ?, ?)"
+                    + " ON DUPLICATE KEY UPDATE units = units + VALUES(units), transactions = transactions + VALUES(transactions)";
+    private static final String UPSERT_CUSTOMER_SQL =
+            "INSERT INTO DailyCustomerSales (sale_date, customer_id, units, transactions) VALUES (COALESCE(DATE(?), CURRENT_DATE), ?, ?, ?)"
+                    + " ON DUPLICATE KEY UPDATE units = units + VALUES(units), transactions = transactions + VALUES(transactions)";
+
+    private static final String SUBTRACT_PRODUCT_SQL =
+            "UPDATE DailyProductSales SET units = units - ?, transactions = transactions - ? WHERE sale_date = ? AND product_id = ?";
+    private static final String SUBTRACT_CUSTOMER_SQL =
+            "UPDATE DailyCustomerSales SET units = units - ?, transactions = transactions - ? WHERE sale_date = ? AND customer_id = ?";
+    private static final String PRUNE_PRODUCT_SQL =
+            "DELETE FROM DailyProductSales WHERE sale_date = ? AND product_id = ? AND transactions <= 0";
+    private static final String PRUNE_CUSTOMER_SQL =
+            "DELETE FROM DailyCustomerSales WHERE sale_date = ? AND customer_id = ? AND transactions <= 0";
+
+    private static final String SELECT_PRODUCT_SQL =
+            "SELECT units FROM DailyProductSales WHERE sale_date = ? AND product_id = ?";
+    private static final String SELECT_CUSTOMER_SQL =
+            "SELECT units FROM DailyCustomerSales WHERE sale_date = ? AND customer_id = ?";
+    private static final String SELECT_CREDIT_SQL = "SELECT credit FROM Credit WHERE customer_id = ?";
+    private static final String SELECT_TODAY_SQL = "SELECT CURRENT_DATE";
+
+    private static final long NOW = Long.MIN_VALUE; // recordAll's sale-time key for rows sold now
+
+    private SalesAggregates() {
+    }
+
+    /**
+     * Adds one Transactions row of the given units to the product and customer counters of the day of
+     * soldAt, or of today if soldAt is null.
+     */
+    static void record(Connection conn, int customerId, int productId, int units, Timestamp soldAt) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(UPSERT_PRODUCT_SQL)) {
+            stmt.setTimestamp(1, soldAt);
+            stmt.setInt(2, productId);
+            stmt.setInt(3, units);
+            stmt.setInt(4, 1);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(UPSERT_CUSTOMER_SQL)) {
+            stmt.setTimestamp(1, soldAt);
+            stmt.setInt(2, customerId);
+            stmt.setInt(3, units);
+            stmt.setInt(4, 1);
+            stmt.executeUpdate();
+        }
+    }
+
+    /** recordAll for rows that were all sold now. */
+    static void recordAll(Connection conn, int[] customerIds, int[] productIds, int[] units) throws SQLException {
+        recordAll(conn, customerIds, productIds, units, null);
+    }
+
+    /**
+     * Adds several Transactions rows (customerIds[i], productIds[i], units[i], sold at soldAt[i]) at once:
+     * the rows are summed per product and per customer (and sale time) and written as two batches, in id
+     * order. soldAt may be null, as may its elements, for rows sold now.
+     */
+    static void recordAll(Connection conn, int[] customerIds, int[] productIds, int[] units, Timestamp[] soldAt)
+            throws SQLException {
+        Map<Integer, Map<Long, long[]>> byProduct = new TreeMap<>();
+        Map<Integer, Map<Long, long[]>> byCustomer = new TreeMap<>();
+        for (int i = 0; i < productIds.length; i++) {
+            long time = soldAt == null || soldAt[i] == null ? NOW : soldAt[i].getTime();
+            long[] p = byProduct.computeIfAbsent(productIds[i], id -> new TreeMap<>()).computeIfAbsent(time, t -> new long[2]);
+            p[0] += units[i];
+            p[1]++;
+            long[] c = byCustomer.computeIfAbsent(customerIds[i], id -> new TreeMap<>()).computeIfAbsent(time, t -> new long[2]);
+            c[0] += units[i];
+            c[1]++;
+        }
+        upsertAll(conn, UPSERT_PRODUCT_SQL, byProduct);
+        upsertAll(conn, UPSERT_CUSTOMER_SQL, byCustomer);
+    }
+
+    private static void upsertAll(Connection conn, String sql, Map<Integer, Map<Long, long[]>> counters)
+            throws SQLException {
+        if (counters.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<Integer, Map<Long, long[]>> e : counters.entrySet()) {
+                for (Map.Entry<Long, long[]> t : e.getValue().entrySet()) {
+                    stmt.setTimestamp(1, t.getKey() == NOW ? null : new Timestamp(t.getKey()));
+                    stmt.setInt(2, e.getKey());
+                    stmt.setLong(3, t.getValue()[0]);
+                    stmt.setLong(4, t.getValue()[1]);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Takes deleted Transactions rows (days[i], customerIds[i], productIds[i], units[i]) back out of the
+     * summaries, for the purge path: the rows are summed per day and product and per day and customer,
+     * subtracted in key order, and summary rows left with no transactions are deleted, so both tables
+     * stay what rebuild() would produce. An id of 0 stands for NULL and is not counted.
+     */
+    static void removeAll(Connection conn, Date[] days, int[] customerIds, int[] productIds, int[] units)
+            throws SQLException {
+        Map<Date, Map<Integer, long[]>> byProduct = new TreeMap<>();
+        Map<Date, Map<Integer, long[]>> byCustomer = new TreeMap<>();
+        for (int i = 0; i < days.length; i++) {
+            if (productIds[i] != 0) {
+                long[] p = byProduct.computeIfAbsent(days[i], d -> new TreeMap<>()).computeIfAbsent(productIds[i], id -> new long[2]);
+                p[0] += units[i];
+                p[1]++;
+            }
+            if (customerIds[i] != 0) {
+                long[] c = byCustomer.computeIfAbsent(days[i], d -> new TreeMap<>()).computeIfAbsent(customerIds[i], id -> new long[2]);
+                c[0] += units[i];
+                c[1]++;
+            }
+        }
+        subtractAll(conn, SUBTRACT_PRODUCT_SQL, PRUNE_PRODUCT_SQL, byProduct);
+        subtractAll(conn, SUBTRACT_CUSTOMER_SQL, PRUNE_CUSTOMER_SQL, byCustomer);
+    }
+
+    private static void subtractAll(Connection conn, String subtractSql, String pruneSql,
+                                    Map<Date, Map<Integer, long[]>> counters) throws SQLException {
+        if (counters.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement subtract = conn.prepareStatement(subtractSql);
+             PreparedStatement prune = conn.prepareStatement(pruneSql)) {
+            for (Map.Entry<Date, Map<Integer, long[]>> day : counters.entrySet()) {
+                for (Map.Entry<Integer, long[]> e : day.getValue().entrySet()) {
+                    subtract.setLong(1, e.getValue()[0]);
+                    subtract.setLong(2, e.getValue()[1]);
+                    subtract.setDate(3, day.getKey());
+                    subtract.setInt(4, e.getKey());
+                    subtract.addBatch();
+                    prune.setDate(1, day.getKey());
+                    prune.setInt(2, e.getKey());
+                    prune.addBatch();
+                }
+            }
+            subtract.executeBatch();
+            prune.executeBatch();
+        }
+    }
+
+    /** Today's date by the database clock, i.e. the sale_date that a sale committed now is counted under. */
+    public static LocalDate today(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_TODAY_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getObject(1, LocalDate.class);
+        }
+    }
+
+    /** Units of the product sold on the given day (0 if none). */
+    public static long unitsSold(Connection conn, int productId, LocalDate day) throws SQLException {
+        return lookup(conn, SELECT_PRODUCT_SQL, productId, day);
+    }
+
+    /** Units bought by the customer on the given day (0 if none). */
+    public static long unitsBought(Connection conn, int customerId, LocalDate day) throws SQLException {
+        return lookup(conn, SELECT_CUSTOMER_SQL, customerId, day);
+    }
+
+    private static long lookup(Connection conn, String sql, int id, LocalDate day) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setDate(1, Date.valueOf(day));
+            stmt.setInt(2, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        }
+    }
+
+    /** The customer's outstanding credit, or 0 if the customer has no Credit row. */
+    public static double outstandingCredit(Connection conn, int customerId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_CREDIT_SQL)) {
+            stmt.setInt(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getDouble(1) : 0.0;
+            }
+        }
+    }
+
+    /**
+     * Recomputes both summary tables from Transactions in one transaction. Concurrent sales wait on
+     * the summary rows until it commits, so nothing is counted twice or lost.
+     */
+    public static void rebuild(DataSource dataSource) throws SQLException {
+        TransactionRetry.inTransaction(dataSource, conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM DailyProductSales");
+                stmt.executeUpdate("DELETE FROM DailyCustomerSales");
+                stmt.executeUpdate("INSERT INTO DailyProductSales (sale_date, product_id, units, transactions)"
+                        + " SELECT DATE(created_at), product_id, SUM(quantity), COUNT(*) FROM Transactions"
+                        + " WHERE product_id IS NOT NULL GROUP BY DATE(created_at), product_id");
+                stmt.executeUpdate("INSERT INTO DailyCustomerSales (sale_date, customer_id, units, transactions)"
+                        + " SELECT DATE(created_at), customer_id, SUM(quantity), COUNT(*) FROM Transactions"
+                        + " WHERE customer_id IS NOT NULL GROUP BY DATE(created_at), customer_id");
+            }
+        });
+    }
+}
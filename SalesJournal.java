@@ -0,0 +1,560 @@
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable local journal for sales taken while the database is unreachable. Sales are appended to a
+ * memory-mapped, preallocated file as checksummed records and forced to disk before append returns,
+ * so the till never waits on a database connect timeout and a sale survives a crash or power loss.
+ *
+ * A background replayer drains the journal in batched transactions as soon as the database answers
+ * again. Each batch also advances the journal's row in JournalReplay (applied_seq) in the same
+ * transaction, so after a crash the replayer resumes after the last committed sequence number and a
+ * sale can never be applied twice. Once everything is applied the file is rewound for reuse; sequence
+ * numbers keep increasing across rewinds, and each journal file has a random id so a recreated file
+ * never inherits another file's progress.
+ *
+ * File layout (big-endian): a 64-byte header -- "GRSJ", int32 version, int64 journal id, int64 first
+ * sequence number -- followed by records of int32 body length, int32 CRC32C of the body, and the body:
+ * int64 sequence, int32 customer id, int32 product id, int32 quantity, int16 type length, UTF-8 type,
+ * float64 coupon discount, int16 length + UTF-8 coupon code (empty unless the sale was taken before the
+ * coupon could be looked up; replay looks it up then, as of the sale's day),
+ * and int64 sale time in epoch milliseconds, which replay writes as the sale's created_at. Records are
+ * read by length, so older ones without the trailing fields read back as undiscounted, coupon-less
+ * sales made at replay time. A zero length (or a record whose checksum does not match, i.e. a torn
+ * write) marks the end.
+ *
+ * A journaled sale already happened at the till, so one the database refuses on replay is never just
+ * dropped: it is copied to JournalRejects, with the reason, in the same transaction that moves
+ * applied_seq past it, for someone to settle by hand.
+ */
+public class SalesJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x4752534A; // "GRSJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_OVERHEAD = 8;
+    private static final int MAX_TYPE_BYTES = 255;
+
+    private static final String SELECT_APPLIED_SQL = "SELECT applied_seq FROM JournalReplay WHERE journal = ?";
+    private static final String UPSERT_APPLIED_SQL =
+            "INSERT INTO JournalReplay (journal, applied_seq) VALUES (?, ?) ON DUPLICATE KEY UPDATE applied_seq = VALUES(applied_seq)";
+    private static final String INSERT_REJECT_SQL = "INSERT INTO JournalRejects (journal, seq, customer_id, product_id,"
+            + " transaction_type, quantity, discount, coupon_code, sold_at, reason) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_REASON_CHARS = 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final String journalKey;
+    private final DataSource dataSource;
+    private final GroupCommitter.BatchHandler<GroceryManagementApp.Sale> handler;
+    private final int replayBatchSize;
+    private final ScheduledExecutorService replayer;
+    private final Object replayLock = new Object();
+
+    // Guarded by this: the writer appends at writePosition; the replayer reads below it.
+    // nextSeq is also read without the lock by the hasPending() check on every sale.
+    private long firstSeq;
+    private volatile long nextSeq;
+    private int writePosition;
+    private final CRC32C crc = new CRC32C();
+
+    // Replayer state: how far the database has applied, and where the replayer is in the file.
+    private volatile long appliedSeq = -1; // -1 until read from the database
+    private int readPosition = HEADER_BYTES;
+    private long readSeq;
+
+    private volatile boolean offline;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder replayBatches = new LongAdder();
+
+    public SalesJournal(Path path, int capacityBytes, DataSource dataSource,
+                        GroupCommitter.BatchHandler<GroceryManagementApp.Sale> handler,
+                        int replayBatchSize, long replayIntervalMillis) throws IOException {
+        this.path = path;
+        this.dataSource = dataSource;
+        this.handler = handler;
+        this.replayBatchSize = replayBatchSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // An existing journal is never mapped smaller than it is, so no records are cut off.
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(Math.max(capacityBytes, HEADER_BYTES * 2), channel.size()));
+
+        long journalId;
+        if (map.getInt(0) == MAGIC) {
+            if (map.getInt(4) != VERSION) {
+                throw new IOException("Unsupported journal version " + map.getInt(4) + " in " + path);
+            }
+            journalId = map.getLong(8);
+            firstSeq = map.getLong(16);
+        } else {
+            journalId = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+            firstSeq = 1;
+            writeHeader(journalId, firstSeq);
+        }
+        journalKey = path.getFileName() + "#" + Long.toHexString(journalId);
+        recover();
+        readSeq = firstSeq;
+
+        replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sales-journal-replay");
+            t.setDaemon(true);
+            return t;
+        });
+        replayer.scheduleWithFixedDelay(this::replayQuietly, 0, replayIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeHeader(long journalId, long first) {
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putLong(8, journalId);
+        map.putLong(16, first);
+        map.putInt(HEADER_BYTES, 0);
+        map.force(0, HEADER_BYTES + 4);
+    }
+
+    /** Finds the end of the valid records after a restart; anything after a torn record is discarded. */
+    private synchronized void recover() {
+        int pos = HEADER_BYTES;
+        long seq = firstSeq;
+        while (true) {
+            int length = readValidRecord(pos, seq);
+            if (length < 0) {
+                break;
+            }
+            pos += RECORD_OVERHEAD + length;
+            seq++;
+        }
+        if (pos + 4 <= map.capacity()) {
+            map.putInt(pos, 0); // cut off any torn tail so it cannot be mistaken for data later
+        }
+        writePosition = pos;
+        nextSeq = seq;
+    }
+
+    /** Body length of the record at pos if it is intact and carries the expected sequence number, else -1. */
+    private int readValidRecord(int pos, long expectedSeq) {
+        if (pos + RECORD_OVERHEAD > map.capacity()) {
+            return -1;
+        }
+        int length = map.getInt(pos);
+        if (length <= 0 || pos + RECORD_OVERHEAD + length > map.capacity()) {
+            return -1;
+        }
+        ByteBuffer body = map.duplicate();
+        body.position(pos + RECORD_OVERHEAD).limit(pos + RECORD_OVERHEAD + length);
+        CRC32C check = new CRC32C();
+        check.update(body);
+        if ((int) check.getValue() != map.getInt(pos + 4) || map.getLong(pos + RECORD_OVERHEAD) != expectedSeq) {
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * True for failures that mean the database could not be reached (SQLState class 08 and the JDBC
+     * connection exception types), as opposed to errors in the sale itself.
+     */
+    public static boolean isConnectivityFailure(SQLException e) {
+        for (Throwable cur = e; cur != null; cur = cur.getCause()) {
+            if (cur instanceof SQLTransientConnectionException || cur instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (cur instanceof SQLException) {
+                String state = ((SQLException) cur).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True while sales should go to the journal instead of the database: the database was last seen
+     * unreachable, or journaled sales are still waiting (new sales queue behind them, so the order
+     * in which stock is consumed is preserved).
+     */
+    public boolean shouldDivert() {
+        return offline || hasPending();
+    }
+
+    public boolean hasPending() {
+        long applied = appliedSeq;
+        return applied < 0 ? pendingCount() > 0 : applied < nextSeq - 1;
+    }
+
+    /** Stops trying the database until the replayer next reaches it. */
+    public void markOffline() {
+        offline = true;
+    }
+
+    /**
+     * Appends a sale, stamped with the current time as its sale time, and forces it to disk. Fails only
+     * if the journal is full or the type is too long.
+     */
+    public synchronized long append(GroceryManagementApp.Sale sale) throws SQLException {
+        return append(sale, System.currentTimeMillis());
+    }
+
+    private long append(GroceryManagementApp.Sale sale, long soldAtMillis) throws SQLException {
+        byte[] type = sale.transactionType.getBytes(StandardCharsets.UTF_8);
+        byte[] coupon = sale.unresolvedCoupon == null ? new byte[0] : sale.unresolvedCoupon.getBytes(StandardCharsets.UTF_8);
+        int length = bodyLength(type, coupon);
+        int end = writePosition + RECORD_OVERHEAD + length;
+        if (end + 4 > map.capacity()) {
+            throw full();
+        }
+        long seq = nextSeq;
+        int body = writePosition + RECORD_OVERHEAD;
+        map.putLong(body, seq);
+        map.putInt(body + 8, sale.customerId);
+        map.putInt(body + 12, sale.productId);
+        map.putInt(body + 16, sale.quantity);
+        map.putShort(body + 20, (short) type.length);
+        map.put(body + 22, type);
+        map.putDouble(body + 22 + type.length, sale.discount);
+        map.putShort(body + 30 + type.length, (short) coupon.length);
+        map.put(body + 32 + type.length, coupon);
+        map.putLong(body + 32 + type.length + coupon.length, soldAtMillis);
+        map.putInt(end, 0); // terminator for the next record slot
+
+        ByteBuffer view = map.duplicate();
+        view.position(body).limit(body + length);
+        crc.reset();
+        crc.update(view);
+        map.putInt(writePosition + 4, (int) crc.getValue());
+        map.force(body, end + 4 - body);
+        // The length is written and forced last: a crash before this leaves a zero length, i.e. no record.
+        map.putInt(writePosition, length);
+        map.force(writePosition, 4);
+
+        writePosition = end;
+        nextSeq = seq + 1;
+        appended.increment();
+        return seq;
+    }
+
+    /**
+     * Appends the lines of one basket back to back, with one sale time; returns the last sequence number.
+     * Room for every line is checked first, so a full journal rejects the whole basket rather than
+     * keeping part of it.
+     */
+    public synchronized long appendAll(List<GroceryManagementApp.Sale> sales) throws SQLException {
+        long needed = 4;
+        for (GroceryManagementApp.Sale sale : sales) {
+            needed += RECORD_OVERHEAD + bodyLength(sale.transactionType.getBytes(StandardCharsets.UTF_8),
+                    sale.unresolvedCoupon == null ? new byte[0] : sale.unresolvedCoupon.getBytes(StandardCharsets.UTF_8));
+        }
+        if (writePosition + needed > map.capacity()) {
+            throw full();
+        }
+        long soldAtMillis = System.currentTimeMillis();
+        long seq = -1;
+        for (GroceryManagementApp.Sale sale : sales) {
+            seq = append(sale, soldAtMillis);
+        }
+        return seq;
+    }
+
+    /** Length of a record body with the given type and coupon code (empty for none); fails if either is too long. */
+    private static int bodyLength(byte[] type, byte[] coupon) throws SQLException {
+        if (type.length > MAX_TYPE_BYTES) {
+            throw new SQLException("Transaction type is too long to journal.");
+        }
+        if (coupon.length > MAX_TYPE_BYTES) {
+            throw new SQLException("Coupon code is too long to journal.");
+        }
+        return 8 + 4 + 4 + 4 + 2 + type.length + 8 + 2 + coupon.length + 8;
+    }
+
+    private SQLException full() {
+        return new SQLException("Offline sales journal " + path + " is full (" + pendingCount() + " sales waiting).");
+    }
+
+    private void replayQuietly() {
+        try {
+            replay();
+        } catch (SQLException e) {
+            if (isConnectivityFailure(e)) {
+                offline = true;
+            } else {
+                System.err.println("Error replaying offline sales journal (will retry): " + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error replaying offline sales journal (will retry): " + e);
+        }
+    }
+
+    /** Applies all journaled sales that the database has not seen yet, in batches; returns how many were applied. */
+    public long replay() throws SQLException {
+        synchronized (replayLock) {
+            if (appliedSeq < 0) {
+                appliedSeq = loadAppliedSeq();
+            }
+            long before = replayed.sum();
+            while (true) {
+                List<GroceryManagementApp.Sale> batch = new ArrayList<>(replayBatchSize);
+                List<Long> seqs = new ArrayList<>(replayBatchSize);
+                int markPosition = readPosition;
+                long markSeq = readSeq;
+                long lastSeq = readBatch(batch, seqs);
+                if (batch.isEmpty()) {
+                    if (lastSeq > appliedSeq) {
+                        saveAppliedSeq(lastSeq); // only already-applied records were skipped
+                    }
+                    break;
+                }
+                try {
+                    applyBatch(batch, seqs, lastSeq);
+                } catch (SQLException e) {
+                    readPosition = markPosition; // read the same records again next time
+                    readSeq = markSeq;
+                    // The commit may have reached the server before the connection dropped; re-read
+                    // applied_seq before the next attempt so an applied batch is skipped, not redone.
+                    appliedSeq = -1;
+                    throw e;
+                }
+            }
+            offline = false;
+            rewindIfDrained();
+            return replayed.sum() - before;
+        }
+    }
+
+    /**
+     * Reads up to replayBatchSize records past the applied sequence number, with their sequence numbers;
+     * returns the last sequence read.
+     */
+    private long readBatch(List<GroceryManagementApp.Sale> batch, List<Long> seqs) {
+        int limit;
+        synchronized (this) {
+            limit = writePosition;
+        }
+        long lastSeq = readSeq - 1;
+        while (batch.size() < replayBatchSize && readPosition < limit) {
+            int body = readPosition + RECORD_OVERHEAD;
+            int length = map.getInt(readPosition);
+            long seq = map.getLong(body);
+            if (seq > appliedSeq) {
+                byte[] type = new byte[map.getShort(body + 20)];
+                map.get(body + 22, type);
+                double discount = length >= 22 + type.length + 8 ? map.getDouble(body + 22 + type.length) : 0.0;
+                String coupon = null;
+                Timestamp soldAt = null;
+                if (length >= 32 + type.length) {
+                    byte[] code = new byte[map.getShort(body + 30 + type.length)];
+                    map.get(body + 32 + type.length, code);
+                    coupon = code.length == 0 ? null : new String(code, StandardCharsets.UTF_8);
+                    if (length >= 40 + type.length + code.length) {
+                        soldAt = new Timestamp(map.getLong(body + 32 + type.length + code.length));
+                    }
+                }
+                batch.add(new GroceryManagementApp.Sale(map.getInt(body + 8), map.getInt(body + 12),
+                        new String(type, StandardCharsets.UTF_8), map.getInt(body + 16), discount, coupon, soldAt));
+                seqs.add(seq);
+            }
+            lastSeq = seq;
+            readPosition = body + length;
+            readSeq = seq + 1;
+        }
+        return lastSeq;
+    }
+
+    /**
+     * Writes one batch and the new applied_seq in a single transaction. Journaled coupon codes are
+     * looked up first (see Sale.resolveCoupon). A sale the database rejects (e.g. stock ran out meanwhile,
+     * or the customer was deleted) cannot be retried, since the customer has long left the till: it is
+     * written to JournalRejects in that same transaction. Anything else leaves the batch for the next
+     * attempt.
+     */
+    private void applyBatch(List<GroceryManagementApp.Sale> batch, List<Long> seqs, long lastSeq) throws SQLException {
+        List<GroceryManagementApp.Sale> sales = new ArrayList<>(batch.size());
+        for (GroceryManagementApp.Sale sale : batch) {
+            sales.add(sale.resolveCoupon());
+        }
+        SQLException[] failures = new SQLException[sales.size()];
+        TransactionRetry.inTransaction(dataSource, conn -> {
+            Arrays.fill(failures, null);
+            try {
+                if (!sales.isEmpty()) {
+                    handler.applyBatch(conn, sales, failures);
+                }
+            } catch (SQLException batchError) {
+                if (TransactionRetry.isRetryable(batchError) || isConnectivityFailure(batchError)) {
+                    throw batchError;
+                }
+                conn.rollback();
+                Arrays.fill(failures, null);
+                applyIndividually(conn, sales, failures);
+            }
+            // Rejects are stored as journaled, so an unresolved coupon code is kept.
+            int rejects = 0;
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_REJECT_SQL)) {
+                for (int i = 0; i < sales.size(); i++) {
+                    if (failures[i] != null) {
+                        addReject(stmt, seqs.get(i), batch.get(i), failures[i]);
+                        rejects++;
+                    }
+                }
+                if (rejects > 0) {
+                    stmt.executeBatch();
+                }
+            }
+            upsertAppliedSeq(conn, lastSeq);
+        });
+        appliedSeq = lastSeq;
+        replayBatches.increment();
+        for (int i = 0; i < sales.size(); i++) {
+            if (failures[i] == null) {
+                replayed.increment();
+                GroceryManagementApp.saleCommitted(sales.get(i));
+            } else {
+                reportRejected(sales.get(i), failures[i]);
+            }
+        }
+    }
+
+    /** Adds a rejected sale to the JournalRejects batch. */
+    private void addReject(PreparedStatement stmt, long seq, GroceryManagementApp.Sale sale, SQLException reason)
+            throws SQLException {
+        String message = String.valueOf(reason.getMessage());
+        stmt.setString(1, journalKey);
+        stmt.setLong(2, seq);
+        stmt.setInt(3, sale.customerId);
+        stmt.setInt(4, sale.productId);
+        stmt.setString(5, sale.transactionType);
+        stmt.setInt(6, sale.quantity);
+        stmt.setDouble(7, sale.discount);
+        stmt.setString(8, sale.unresolvedCoupon);
+        stmt.setTimestamp(9, sale.soldAt);
+        stmt.setString(10, message.length() > MAX_REASON_CHARS ? message.substring(0, MAX_REASON_CHARS) : message);
+        stmt.addBatch();
+    }
+
+    private void reportRejected(GroceryManagementApp.Sale sale, SQLException reason) {
+        rejected.increment();
+        System.err.printf("Journaled sale rejected on replay and kept in JournalRejects (customer %d, product %d, qty %d, %s): %s%n",
+                sale.customerId, sale.productId, sale.quantity, sale.transactionType, reason.getMessage());
+    }
+
+    private void applyIndividually(Connection conn, List<GroceryManagementApp.Sale> batch, SQLException[] failures)
+            throws SQLException {
+        for (int i = 0; i < batch.size(); i++) {
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                handler.applyOne(conn, batch.get(i));
+                conn.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                if (TransactionRetry.isRetryable(e) || isConnectivityFailure(e)) {
+                    throw e;
+                }
+                conn.rollback(savepoint);
+                failures[i] = e;
+            }
+        }
+    }
+
+    private long loadAppliedSeq() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_APPLIED_SQL)) {
+            stmt.setString(1, journalKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : firstSeq - 1;
+            }
+        }
+    }
+
+    private void saveAppliedSeq(long seq) throws SQLException {
+        TransactionRetry.inTransaction(dataSource, conn -> upsertAppliedSeq(conn, seq));
+        appliedSeq = seq;
+    }
+
+    private void upsertAppliedSeq(Connection conn, long seq) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(UPSERT_APPLIED_SQL)) {
+            stmt.setString(1, journalKey);
+            stmt.setLong(2, seq);
+            stmt.executeUpdate();
+        }
+    }
+
+    /** Once every record is applied, start writing from the top again; sequence numbers carry on. */
+    private synchronized void rewindIfDrained() {
+        if (writePosition == HEADER_BYTES || appliedSeq != nextSeq - 1) {
+            return;
+        }
+        firstSeq = nextSeq;
+        map.putLong(16, firstSeq);
+        map.putInt(HEADER_BYTES, 0);
+        map.force(0, HEADER_BYTES + 4);
+        writePosition = HEADER_BYTES;
+        readPosition = HEADER_BYTES;
+        readSeq = firstSeq;
+    }
+
+    /** Number of journaled sales not yet applied to the database (approximate before the first replay). */
+    public synchronized long pendingCount() {
+        long applied = appliedSeq;
+        return applied < 0 ? nextSeq - firstSeq : nextSeq - 1 - applied;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /** Stops the replayer after a last attempt to drain; whatever is left stays in the file for the next start. */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        replayer.shutdown();
+        try {
+            replayer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replayQuietly();
+        synchronized (this) {
+            map.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing offline sales journal: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("offline=%b, pending=%d, appended=%d, replayed=%d, rejected=%d, batches=%d",
+                offline, pendingCount(), appended.sum(), replayed.sum(), rejected.sum(), replayBatches.sum());
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports the Transactions table, joined with the product price, for nightly reconciliation.
+ * Rows are streamed through a forward-only cursor with a large fetch size and encoded straight into
+ * a direct ByteBuffer that is drained to a FileChannel, so heap use stays constant however many rows
+ * there are. The export reads from a read replica when one is configured (grocery.db.replicaUrls),
+ * so it does not compete with checkout on the primary. Two formats are supported:
+ *
+ * csv -- transaction_id,customer_id,product_id,transaction_type,quantity,price,created_at (price as
+ *        a decimal, created_at as an ISO-8601 UTC instant, NULLs as empty fields).
+ *
+ * bin -- fixed-width columnar layout meant to be memory-mapped, all values little-endian:
+ *        a 64-byte header, then blocks of ROWS_PER_BLOCK rows. Inside a block each column is stored
+ *        contiguously (transaction_id, customer_id, product_id, type_code, quantity as int32, then
+ *        price_cents and created_at_ms -- milliseconds since the epoch -- as int64), so column c of block b starts at
+ *        HEADER_BYTES + b * blockBytes + ROWS_PER_BLOCK * (sum of the widths of the columns before c).
+ *        The last block is padded to full size. NULL is Integer.MIN_VALUE / Long.MIN_VALUE.
+ *        transaction_type is dictionary-encoded; the dictionary follows the last block as
+ *        int32 count, then per entry int32 byte length + UTF-8 bytes, in code order.
+ *        Header: "GRTX" magic, int32 version, int32 rowsPerBlock, int32 columnCount, int64 rowCount,
+ *        int64 blockCount, int64 dictionaryOffset, rest zero.
+ *
+ * Usage: java TransactionExporter csv|bin output-file
+ */
+public class TransactionExporter {
+
+    // Price in cents is computed by the database so the export never materialises a BigDecimal per row.
+    private static final String EXPORT_SQL =
+            "SELECT t.transaction_id, t.customer_id, t.product_id, t.Transaction_type, t.quantity,"
+                    + " CAST(ROUND(p.price * 100) AS SIGNED) AS price_cents, t.created_at"
+                    + " FROM Transactions t LEFT JOIN Products p ON p.product_id = t.product_id"
+                    + " ORDER BY t.transaction_id";
+
+    private static final int FETCH_SIZE = Integer.getInteger("grocery.export.fetchSize", 10_000);
+    private static final int CSV_BUFFER_BYTES = 4 << 20;
+
+    static final byte[] MAGIC = {'G', 'R', 'T', 'X'};
+    static final int VERSION = 2; // 2: quantity replaces the never-written Amount; created_at_ms added
+    static final int HEADER_BYTES = 64;
+    static final int ROWS_PER_BLOCK = 65_536;
+    static final int[] COLUMN_WIDTHS = {4, 4, 4, 4, 4, 8, 8};
+    static final int ROW_BYTES = 36;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !(args[0].equals("csv") || args[0].equals("bin"))) {
+            System.err.println("Usage: java TransactionExporter csv|bin output-file");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        Path out = Paths.get(args[1]);
+        long rows = args[0].equals("csv") ? exportCsv(out) : exportBinary(out);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d transactions to %s in %.2f s (%.0f rows/sec)%n", rows, out, seconds, rows / seconds);
+        System.exit(0);
+    }
+
+    /** Opens the streaming cursor over the export query. The caller closes the statement. */
+    private static ResultSet openCursor(Statement stmt) throws SQLException {
+        stmt.setFetchSize(FETCH_SIZE);
+        return stmt.executeQuery(EXPORT_SQL);
+    }
+
+    private static FileChannel openForWrite(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // --- CSV ---
+
+    /** Writes the export as CSV and returns the number of rows. */
+    public static long exportCsv(Path path) throws SQLException, IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(CSV_BUFFER_BYTES);
+        long rows = 0;
+        try (FileChannel channel = openForWrite(path);
+             Connection conn = GroceryManagementApp.getReadConnection();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             ResultSet rs = openCursor(stmt)) {
+
+            buf.put("transaction_id,customer_id,product_id,transaction_type,quantity,price,created_at\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            while (rs.next()) {
+                // Worst case for the numeric and timestamp fields is well under 160 bytes; the type string is checked separately.
+                String type = rs.getString(4);
+                byte[] typeBytes = type == null ? null : type.getBytes(StandardCharsets.UTF_8);
+                if (buf.remaining() < 160 + (typeBytes == null ? 0 : typeBytes.length * 2 + 2)) {
+                    drain(buf, channel);
+                }
+                putInt(buf, rs.getInt(1));
+                buf.put((byte) ',');
+                putNullableInt(buf, rs, 2);
+                buf.put((byte) ',');
+                putNullableInt(buf, rs, 3);
+                buf.put((byte) ',');
+                if (typeBytes != null) {
+                    putCsvText(buf, typeBytes);
+                }
+                buf.put((byte) ',');
+                putNullableInt(buf, rs, 5);
+                buf.put((byte) ',');
+                long cents = rs.getLong(6);
+                if (!rs.wasNull()) {
+                    putCents(buf, cents);
+                }
+                buf.put((byte) ',');
+                Timestamp createdAt = rs.getTimestamp(7);
+                if (createdAt != null) {
+                    buf.put(createdAt.toInstant().toString().getBytes(StandardCharsets.US_ASCII));
+                }
+                buf.put((byte) '\n');
+                rows++;
+            }
+            drain(buf, channel);
+        }
+        return rows;
+    }
+
+    private static void drain(ByteBuffer buf, FileChannel channel) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static void putNullableInt(ByteBuffer buf, ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        if (!rs.wasNull()) {
+            putInt(buf, value);
+        }
+    }
+
+    /** Writes a decimal integer as ASCII without allocating. */
+    static void putInt(ByteBuffer buf, long value) {
+        if (value < 0) {
+            buf.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                buf.put("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buf.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    /** Writes cents as a two-decimal amount, e.g. 1999 -> 19.99 and -5 -> -0.05. */
+    static void putCents(ByteBuffer buf, long cents) {
+        if (cents < 0) {
+            buf.put((byte) '-');
+            cents = -cents;
+        }
+        putInt(buf, cents / 100);
+        buf.put((byte) '.');
+        buf.put((byte) ('0' + (cents % 100) / 10));
+        buf.put((byte) ('0' + cents % 10));
+    }
+
+    private static void putCsvText(ByteBuffer buf, byte[] text) {
+        boolean quote = false;
+        for (byte b : text) {
+            if (b == ',' || b == '"' || b == '\n' || b == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            buf.put(text);
+            return;
+        }
+        buf.put((byte) '"');
+        for (byte b : text) {
+            if (b == '"') {
+                buf.put((byte) '"');
+            }
+            buf.put(b);
+        }
+        buf.put((byte) '"');
+    }
+
+    // --- Binary columnar ---
+
+    /** Writes the export in the fixed-width columnar layout described above and returns the number of rows. */
+    public static long exportBinary(Path path) throws SQLException, IOException {
+        int blockBytes = ROWS_PER_BLOCK * ROW_BYTES;
+        int[] columnStart = new int[COLUMN_WIDTHS.length];
+        for (int c = 1; c < COLUMN_WIDTHS.length; c++) {
+            columnStart[c] = columnStart[c - 1] + COLUMN_WIDTHS[c - 1] * ROWS_PER_BLOCK;
+        }
+        ByteBuffer block = ByteBuffer.allocateDirect(blockBytes).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> dictionaryOrder = new ArrayList<>();
+
+        long rows = 0;
+        long blocks = 0;
+        try (FileChannel channel = openForWrite(path);
+             Connection conn = GroceryManagementApp.getReadConnection();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             ResultSet rs = openCursor(stmt)) {
+
+            channel.position(HEADER_BYTES); // header is written last, once the counts are known
+            int row = 0;
+            while (rs.next()) {
+                block.putInt(columnStart[0] + row * 4, rs.getInt(1));
+                block.putInt(columnStart[1] + row * 4, nullableInt(rs, 2));
+                block.putInt(columnStart[2] + row * 4, nullableInt(rs, 3));
+                String type = rs.getString(4);
+                int code = Integer.MIN_VALUE;
+                if (type != null) {
+                    Integer known = dictionary.get(type);
+                    if (known == null) {
+                        known = dictionaryOrder.size();
+                        dictionary.put(type, known);
+                        dictionaryOrder.add(type);
+                    }
+                    code = known;
+                }
+                block.putInt(columnStart[3] + row * 4, code);
+                block.putInt(columnStart[4] + row * 4, nullableInt(rs, 5));
+                long cents = rs.getLong(6);
+                block.putLong(columnStart[5] + row * 8, rs.wasNull() ? Long.MIN_VALUE : cents);
+                Timestamp createdAt = rs.getTimestamp(7);
+                block.putLong(columnStart[6] + row * 8, createdAt == null ? Long.MIN_VALUE : createdAt.getTime());
+
+                rows++;
+                if (++row == ROWS_PER_BLOCK) {
+                    writeBlock(block, channel);
+                    blocks++;
+                    row = 0;
+                }
+            }
+            if (row > 0) {
+                // Pad the final block so every block has the same size and offsets stay computable.
+                for (int i = 0; i < COLUMN_WIDTHS.length; i++) {
+                    for (int r = row; r < ROWS_PER_BLOCK; r++) {
+                        if (COLUMN_WIDTHS[i] == 8) {
+                            block.putLong(columnStart[i] + r * 8, Long.MIN_VALUE);
+                        } else {
+                            block.putInt(columnStart[i] + r * 4, Integer.MIN_VALUE);
+                        }
+                    }
+                }
+                writeBlock(block, channel);
+                blocks++;
+            }
+
+            long dictionaryOffset = channel.position();
+            writeDictionary(dictionaryOrder, channel);
+            writeHeader(channel, rows, blocks, dictionaryOffset);
+        }
+        return rows;
+    }
+
+    private static int nullableInt(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? Integer.MIN_VALUE : value;
+    }
+
+    private static void writeBlock(ByteBuffer block, FileChannel channel) throws IOException {
+        block.clear(); // absolute puts never move the position; expose the whole block
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        block.clear();
+    }
+
+    private static void writeDictionary(List<String> entries, FileChannel channel) throws IOException {
+        int size = 4;
+        List<byte[]> encoded = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(entries.size());
+        for (byte[] bytes : encoded) {
+            buf.putInt(bytes.length);
+            buf.put(bytes);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long rows, long blocks, long dictionaryOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(ROWS_PER_BLOCK);
+        header.putInt(COLUMN_WIDTHS.length);
+        header.putLong(rows);
+        header.putLong(blocks);
+        header.putLong(dictionaryOffset);
+        header.clear();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One customer's or one product's Transactions rows, newest first, a page at a time. Paging is by
+ * keyset on (customer_id, created_at, transaction_id) -- respectively (product_id, ...) -- rather
+ * than OFFSET: each page continues strictly after the last row of the previous one, so it is a range
+ * scan of pageSize + 1 entries of the covering index idx_transactions_customer_history (or
+ * idx_transactions_product_history) however large the table or deep the page, and never reads the
+ * table rows themselves.
+ */
+public final class TransactionHistory {
+
+    private static final String COLUMNS = "transaction_id, customer_id, product_id, Transaction_type, quantity, created_at";
+
+    /** One Transactions row. */
+    public static final class Entry {
+        public final int transactionId;
+        public final int customerId;
+        public final int productId;
+        public final String transactionType;
+        public final int quantity;
+        public final Timestamp createdAt;
+
+        Entry(int transactionId, int customerId, int productId, String transactionType, int quantity,
+              Timestamp createdAt) {
+            this.transactionId = transactionId;
+            this.customerId = customerId;
+            this.productId = productId;
+            this.transactionType = transactionType;
+            this.quantity = quantity;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /** Position after which the next page starts. The string form round-trips through parse(). */
+    public static final class Cursor {
+        final Timestamp createdAt;
+        final int transactionId;
+
+        Cursor(Timestamp createdAt, int transactionId) {
+            this.createdAt = createdAt;
+            this.transactionId = transactionId;
+        }
+
+        public static Cursor parse(String token) {
+            int slash = token.lastIndexOf('/');
+            if (slash < 0) {
+                throw new IllegalArgumentException("Invalid history cursor: " + token);
+            }
+            return new Cursor(Timestamp.from(Instant.parse(token.substring(0, slash))),
+                    Integer.parseInt(token.substring(slash + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return createdAt.toInstant() + "/" + transactionId;
+        }
+    }
+
+    /** A page of entries and the cursor for the next one (null on the last page). */
+    public static final class Page {
+        public final List<Entry> entries;
+        public final Cursor next;
+
+        Page(List<Entry> entries, Cursor next) {
+            this.entries = entries;
+            this.next = next;
+        }
+    }
+
+    private TransactionHistory() {
+    }
+
+    /**
+     * A page of a customer's history. from and to are inclusive days and may be null for an open range;
+     * after is null for the first page.
+     */
+    public static Page forCustomer(Connection conn, int customerId, LocalDate from, LocalDate to, Cursor after,
+                                   int pageSize) throws SQLException {
+        return page(conn, "customer_id", customerId, from, to, after, pageSize);
+    }
+
+    /** A page of a product's history; see forCustomer. */
+    public static Page forProduct(Connection conn, int productId, LocalDate from, LocalDate to, Cursor after,
+                                  int pageSize) throws SQLException {
+        return page(conn, "product_id", productId, from, to, after, pageSize);
+    }
+
+    private static Page page(Connection conn, String keyColumn, int key, LocalDate from, LocalDate to, Cursor after,
+                             int pageSize) throws SQLException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        // Optional clauses are appended rather than bound to sentinel dates, so every variant stays a
+        // plain range on the index (at most eight distinct strings reach the statement cache).
+        StringBuilder query = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM Transactions WHERE ").append(keyColumn).append(" = ?");
+        if (from != null) {
+            query.append(" AND created_at >= ?");
+        }
+        if (to != null) {
+            query.append(" AND created_at < ?");
+        }
+        if (after != null) {
+            query.append(" AND (created_at < ? OR (created_at = ? AND transaction_id < ?))");
+        }
+        query.append(" ORDER BY created_at DESC, transaction_id DESC LIMIT ?");
+
+        try (PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+            int param = 1;
+            stmt.setInt(param++, key);
+            if (from != null) {
+                stmt.setTimestamp(param++, Timestamp.valueOf(from.atStartOfDay()));
+            }
+            if (to != null) {
+                stmt.setTimestamp(param++, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+            }
+            if (after != null) {
+                stmt.setTimestamp(param++, after.createdAt);
+                stmt.setTimestamp(param++, after.createdAt);
+                stmt.setInt(param++, after.transactionId);
+            }
+            // One extra row tells whether another page follows without a second query.
+            stmt.setInt(param, pageSize + 1);
+            List<Entry> entries = new ArrayList<>(Math.min(pageSize + 1, 1024));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new Entry(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4), rs.getInt(5),
+                            rs.getTimestamp(6)));
+                }
+            }
+            if (entries.size() <= pageSize) {
+                return new Page(Collections.unmodifiableList(entries), null);
+            }
+            entries.remove(pageSize);
+            Entry last = entries.get(pageSize - 1);
+            return new Page(Collections.unmodifiableList(entries), new Cursor(last.createdAt, last.transactionId));
+        }
+    }
+}
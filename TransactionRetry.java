@@ -0,0 +1,147 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs short write transactions and retries them when the database aborts them because of a
+ * deadlock or a lock-wait timeout. Retries back off exponentially with full jitter, up to a bounded
+ * number of attempts, so contending tills spread out instead of colliding again in lock-step.
+ */
+public final class TransactionRetry {
+
+    static final int MAX_ATTEMPTS = Integer.getInteger("grocery.retry.maxAttempts", 5);
+    private static final long BASE_BACKOFF_MILLIS = Long.getLong("grocery.retry.baseBackoffMs", 2L);
+    private static final long MAX_BACKOFF_MILLIS = Long.getLong("grocery.retry.maxBackoffMs", 100L);
+
+    // MySQL: 1213 = deadlock found, 1205 = lock wait timeout exceeded.
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    private static final LongAdder retries = new LongAdder();
+
+    /**
+     * Thrown when the commit call itself fails. The server may have applied the transaction before
+     * the connection dropped, so the work must not simply be redone elsewhere (e.g. journaled).
+     * The original error is the cause, so isRetryable and connectivity checks still see it.
+     */
+    public static final class CommitOutcomeUnknownException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        CommitOutcomeUnknownException(SQLException cause) {
+            super("Commit failed; the transaction may or may not have been applied: " + cause.getMessage(),
+                    cause.getSQLState(), cause.getErrorCode(), cause);
+        }
+    }
+
+    /** Work done inside one transaction. It must not commit, roll back or close the connection. */
+    @FunctionalInterface
+    public interface Work {
+        void run(Connection conn) throws SQLException;
+    }
+
+    private TransactionRetry() {
+    }
+
+    /**
+     * True for errors that abort the transaction and are worth retrying as a whole:
+     * SQLState 40001 (serialization failure / deadlock), MySQL deadlock and lock-wait-timeout
+     * error codes, and SQLState HYT00 (lock timeout on embedded databases such as H2).
+     */
+    public static boolean isRetryable(SQLException e) {
+        for (Throwable cur = e; cur != null; cur = cur.getCause()) {
+            if (cur instanceof SQLException) {
+                SQLException sql = (SQLException) cur;
+                if (isLockFailure(sql) || (sql.getNextException() != null && isLockFailure(sql.getNextException()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLockFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransactionRollbackException
+                || "40001".equals(state) || "HYT00".equals(state)
+                || e.getErrorCode() == ER_LOCK_DEADLOCK || e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+    }
+
+    /** Commits, reporting a failure of the commit call as CommitOutcomeUnknownException. */
+    static void commit(Connection conn) throws SQLException {
+        try {
+            conn.commit();
+        } catch (SQLException e) {
+            throw new CommitOutcomeUnknownException(e);
+        }
+    }
+
+    /** Sleeps before the given retry (1-based): a random delay up to base * 2^(attempt-1), capped. */
+    public static void backoff(int attempt) throws SQLException {
+        retries.increment();
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while backing off before a transaction retry.", e);
+        }
+    }
+
+    /**
+     * Borrows a connection, runs the work in one transaction and commits. On a retryable error the
+     * transaction is rolled back and run again from the start; any other error is rolled back
+     * and rethrown unchanged.
+     */
+    public static void inTransaction(DataSource dataSource, Work work) throws SQLException {
+        inTransaction(dataSource, work, null);
+    }
+
+    /**
+     * As inTransaction(DataSource, Work), counting rollbacks against the given operation in
+     * OperationMetrics. For makeTransaction the connect and commit phases are timed as well.
+     */
+    static void inTransaction(DataSource dataSource, Work work, OperationMetrics.Op op) throws SQLException {
+        boolean timePhases = op == OperationMetrics.Op.MAKE_TRANSACTION;
+        for (int attempt = 1; ; attempt++) {
+            long connectStart = OperationMetrics.start();
+            try (Connection conn = dataSource.getConnection()) {
+                if (timePhases) {
+                    OperationMetrics.recordPhase(OperationMetrics.Phase.CONNECT, connectStart);
+                }
+                conn.setAutoCommit(false);
+                try {
+                    work.run(conn);
+                    long commitStart = OperationMetrics.start();
+                    commit(conn);
+                    if (timePhases) {
+                        OperationMetrics.recordPhase(OperationMetrics.Phase.COMMIT, commitStart);
+                    }
+                    return;
+                } catch (SQLException e) {
+                    if (op != null) {
+                        OperationMetrics.rollback(op);
+                    }
+                    try {
+                        conn.rollback();
+                    } catch (SQLException rollbackEx) {
+                        System.err.println("Rollback failed: " + rollbackEx.getMessage());
+                    }
+                    throw e;
+                }
+            } catch (SQLException e) {
+                if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    /** Total number of retries performed so far, across all callers. */
+    public static long retryCount() {
+        return retries.sum();
+    }
+}
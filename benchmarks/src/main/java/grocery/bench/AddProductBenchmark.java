@@ -0,0 +1,61 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk product entry: BATCH consecutive addProduct calls per invocation, reported per product.
+ * Products added by the previous iteration are deleted before the next, so the table size stays
+ * close to tableSize for the whole run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AddProductBenchmark {
+
+    static final int BATCH = 1_000;
+
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void silence() {
+        stdout = BenchmarkDatabase.silenceStdout();
+    }
+
+    @Setup(Level.Iteration)
+    public void trim(SeededDatabase db) throws SQLException {
+        BenchmarkDatabase.execute("DELETE FROM Products WHERE product_id > ?", db.tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void restore() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void addProducts(SeededDatabase db, RandomIds ids) {
+        int vendors = Math.max(1, db.tableSize / 100);
+        for (int i = 0; i < BATCH; i++) {
+            App.addProduct("Bench product " + i, 1 + ids.next(db) % vendors, 9.99, 100);
+        }
+    }
+}
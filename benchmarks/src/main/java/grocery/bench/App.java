@@ -0,0 +1,106 @@
+package grocery.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Calls into GroceryManagementApp. The application lives in the unnamed package, which code in a
+ * named package (and JMH's generated code always is) cannot reference directly, so its public static
+ * methods are bound once through method handles; invokeExact on a constant handle costs no more than
+ * a direct call once JIT-compiled.
+ *
+ * The app reads its database settings when the class is initialised, so configure() must run first.
+ */
+final class App {
+
+    private static final MethodHandle EXECUTE_SALE;
+    private static final MethodHandle DISPLAY_RECORDS;
+    private static final MethodHandle ADD_PRODUCT;
+    private static final MethodHandle ADD_REWARD_POINTS;
+    private static final MethodHandle CUSTOMER_HISTORY;
+    private static final MethodHandle PARSE_CURSOR;
+
+    static {
+        BenchmarkDatabase.configure();
+        try {
+            Class<?> app = Class.forName("GroceryManagementApp");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            EXECUTE_SALE = lookup.findStatic(app, "executeSale",
+                    MethodType.methodType(void.class, int.class, int.class, String.class, int.class));
+            DISPLAY_RECORDS = lookup.findStatic(app, "displayRecords", MethodType.methodType(void.class, String.class));
+            ADD_PRODUCT = lookup.findStatic(app, "addProduct",
+                    MethodType.methodType(void.class, String.class, int.class, double.class, int.class));
+            ADD_REWARD_POINTS = lookup.findStatic(app, "addRewardPoints",
+                    MethodType.methodType(void.class, int.class, int.class));
+            // The history types are in the unnamed package too, so they are seen here as Object.
+            Class<?> cursor = Class.forName("TransactionHistory$Cursor");
+            Class<?> page = Class.forName("TransactionHistory$Page");
+            CUSTOMER_HISTORY = lookup.findStatic(app, "getCustomerHistory",
+                            MethodType.methodType(page, int.class, LocalDate.class, LocalDate.class, cursor, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class, LocalDate.class, LocalDate.class,
+                            Object.class, int.class));
+            PARSE_CURSOR = lookup.findStatic(cursor, "parse", MethodType.methodType(cursor, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private App() {
+    }
+
+    static void executeSale(int customerId, int productId, String transactionType, int quantity) throws SQLException {
+        try {
+            EXECUTE_SALE.invokeExact(customerId, productId, transactionType, quantity);
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void displayRecords(String tableName) {
+        try {
+            DISPLAY_RECORDS.invokeExact(tableName);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void addProduct(String name, int vendorId, double price, int quantity) {
+        try {
+            ADD_PRODUCT.invokeExact(name, vendorId, price, quantity);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void addRewardPoints(int customerId, int points) throws SQLException {
+        try {
+            ADD_REWARD_POINTS.invokeExact(customerId, points);
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /** One page of a customer's whole history, starting after the cursor token (null for the newest page). */
+    static Object customerHistory(int customerId, String cursorToken, int pageSize) throws SQLException {
+        try {
+            Object cursor = cursorToken == null ? null : (Object) PARSE_CURSOR.invokeExact(cursorToken);
+            return (Object) CUSTOMER_HISTORY.invokeExact(customerId, (LocalDate) null, (LocalDate) null, cursor, pageSize);
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package grocery.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Embedded H2 database in MySQL compatibility mode, created from grocery_management.sql and seeded
+ * with deterministic data, so runs on different machines and commits measure the same workload.
+ * Every table except Coupons gets tableSize rows (Vendors one per 100 products); stock is large
+ * enough that sales never run out during a run.
+ */
+final class BenchmarkDatabase {
+
+    static final String URL = "jdbc:h2:mem:grocery;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+            + "CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    static final String USER = "sa";
+    static final String PASSWORD = "";
+    static final int INITIAL_STOCK = 1_000_000_000;
+    private static final long SEED = 42;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Points the application at the embedded database. Values already given with -D win, so a run
+     * can still override e.g. the pool size or enable group commit.
+     */
+    static void configure() {
+        setIfAbsent("grocery.db.url", URL);
+        setIfAbsent("grocery.db.user", USER);
+        setIfAbsent("grocery.db.password", PASSWORD);
+        setIfAbsent("grocery.pool.maxSize", "64");
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /** Drops everything and recreates the schema with tableSize rows per table. */
+    static void reset(int tableSize) throws SQLException, IOException {
+        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP ALL OBJECTS");
+                for (String sql : schemaStatements()) {
+                    stmt.execute(sql);
+                }
+            }
+            conn.setAutoCommit(false);
+            seed(conn, tableSize);
+            conn.commit();
+        }
+    }
+
+    /** The DDL from grocery_management.sql, minus the MySQL-only CREATE DATABASE / USE lines. */
+    private static String[] schemaStatements() throws IOException {
+        String script;
+        try (InputStream in = BenchmarkDatabase.class.getResourceAsStream("/grocery_management.sql")) {
+            if (in == null) {
+                throw new IOException("grocery_management.sql is not on the classpath");
+            }
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        return Arrays.stream(script.split(";"))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .filter(s -> {
+                    String lower = s.toLowerCase(Locale.ROOT);
+                    return !lower.startsWith("create database") && !lower.startsWith("use ");
+                })
+                .toArray(String[]::new);
+    }
+
+    private static void seed(Connection conn, int tableSize) throws SQLException {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int vendors = Math.max(1, tableSize / 100);
+        batchInsert(conn, "INSERT INTO Vendors (name, phone, email, address) VALUES (?, ?, ?, ?)", vendors, (stmt, i) -> {
+            stmt.setString(1, "Vendor " + i);
+            stmt.setString(2, "555-" + i);
+            stmt.setString(3, "vendor" + i + "@example.com");
+            stmt.setString(4, i + " Market Street");
+        });
+        batchInsert(conn, "INSERT INTO Customers (first_name, last_name, email, phone, address) VALUES (?, ?, ?, ?, ?)",
+                tableSize, (stmt, i) -> {
+                    stmt.setString(1, "First" + i);
+                    stmt.setString(2, "Last" + i);
+                    stmt.setString(3, "customer" + i + "@example.com");
+                    stmt.setString(4, "555-" + i);
+                    stmt.setString(5, i + " Main Street");
+                });
+        batchInsert(conn, "INSERT INTO Credit (customer_id, credit) VALUES (?, 0)", tableSize,
+                (stmt, i) -> stmt.setInt(1, i));
+        batchInsert(conn, "INSERT INTO Rewards (customer_id, points) VALUES (?, 0)", tableSize,
+                (stmt, i) -> stmt.setInt(1, i));
+        batchInsert(conn, "INSERT INTO Products (name, vendor_id, price, quantity) VALUES (?, ?, ?, ?)", tableSize,
+                (stmt, i) -> {
+                    stmt.setString(1, "Product " + i);
+                    stmt.setInt(2, 1 + random.nextInt(vendors));
+                    stmt.setDouble(3, (1 + random.nextInt(5_000)) / 100.0);
+                    stmt.setInt(4, INITIAL_STOCK);
+                });
+        batchInsert(conn, "INSERT INTO Transactions (customer_id, product_id, Transaction_type) VALUES (?, ?, ?)",
+                tableSize, (stmt, i) -> {
+                    stmt.setInt(1, 1 + random.nextInt(tableSize));
+                    stmt.setInt(2, 1 + random.nextInt(tableSize));
+                    stmt.setString(3, random.nextBoolean() ? "credit" : "cash");
+                });
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement stmt, int id) throws SQLException;
+    }
+
+    /** Inserts rows 1..count (ids match AUTO_INCREMENT keys on a fresh table). */
+    private static void batchInsert(Connection conn, String sql, int count, RowBinder binder) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= count; i++) {
+                binder.bind(stmt, i);
+                stmt.addBatch();
+                if (i % 1_000 == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Adds rows Transactions rows for random customers and products in 1..customers, timestamped in
+     * id order over the year before a fixed date (as AUTO_INCREMENT and created_at correlate in
+     * production). Commits every 100,000 rows so very large tables do not build one huge transaction.
+     */
+    static void appendHistory(int rows, int customers) throws SQLException {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        long end = Timestamp.valueOf("2025-01-01 00:00:00").getTime();
+        long spanMillis = 365L * 24 * 60 * 60 * 1000;
+        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
+             PreparedStatement stmt = conn.prepareStatement("INSERT INTO Transactions"
+                     + " (customer_id, product_id, Transaction_type, quantity, created_at) VALUES (?, ?, ?, ?, ?)")) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < rows; i++) {
+                stmt.setInt(1, 1 + random.nextInt(customers));
+                stmt.setInt(2, 1 + random.nextInt(customers));
+                stmt.setString(3, random.nextBoolean() ? "credit" : "cash");
+                stmt.setInt(4, 1 + random.nextInt(5));
+                stmt.setTimestamp(5, new Timestamp(end - spanMillis + spanMillis * i / rows / 1000 * 1000));
+                stmt.addBatch();
+                if ((i + 1) % 1_000 == 0) {
+                    stmt.executeBatch();
+                }
+                if ((i + 1) % 100_000 == 0) {
+                    conn.commit();
+                }
+            }
+            stmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    /**
+     * History cursor token (TransactionHistory.Cursor's string form) for the row halfway through the
+     * customer's history, newest first, or null if the customer has fewer than two rows.
+     */
+    static String middleHistoryCursor(int customerId) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
+             PreparedStatement count = conn.prepareStatement("SELECT COUNT(*) FROM Transactions WHERE customer_id = ?");
+             PreparedStatement row = conn.prepareStatement("SELECT created_at, transaction_id FROM Transactions"
+                     + " WHERE customer_id = ? ORDER BY created_at DESC, transaction_id DESC LIMIT 1 OFFSET ?")) {
+            count.setInt(1, customerId);
+            long rows;
+            try (ResultSet rs = count.executeQuery()) {
+                rs.next();
+                rows = rs.getLong(1);
+            }
+            if (rows < 2) {
+                return null;
+            }
+            row.setInt(1, customerId);
+            row.setLong(2, rows / 2 - 1);
+            try (ResultSet rs = row.executeQuery()) {
+                rs.next();
+                return rs.getTimestamp(1).toInstant() + "/" + rs.getInt(2);
+            }
+        }
+    }
+
+    /** Runs one statement with int parameters against the embedded database, outside the app's pool. */
+    static void execute(String sql, int... params) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setInt(i + 1, params[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    /** Replaces System.out with a sink so console output does not dominate the measurement; returns the original. */
+    static PrintStream silenceStdout() {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return original;
+    }
+}
@@ -0,0 +1,52 @@
+package grocery.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH options plus -threads with a comma-separated
+ * list of thread counts; the selected benchmarks run once per count and each run writes its results
+ * to jmh-result-threads-N.json, the file to archive and compare across commits.
+ *
+ * Examples:
+ *   java -jar benchmarks.jar                                   (all benchmarks, 1 thread, default sizes)
+ *   java -jar benchmarks.jar -threads 1,4,16 -p tableSize=100000 SaleBenchmark
+ *   java -jar benchmarks.jar -threads 8 -jvmArgsAppend -Dgrocery.groupCommit.batchSize=32 SaleBenchmark
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        List<String> jmhArgs = new ArrayList<>();
+        int[] threadCounts = {1};
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                String[] parts = args[++i].split(",");
+                threadCounts = new int[parts.length];
+                for (int k = 0; k < parts.length; k++) {
+                    threadCounts[k] = Integer.parseInt(parts[k].trim());
+                }
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .result("jmh-result-threads-" + threads + ".json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
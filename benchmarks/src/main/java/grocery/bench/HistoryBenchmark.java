@@ -0,0 +1,47 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getCustomerHistory for one page of pageSize rows, either the newest page or one starting halfway
+ * through the customer's history. With keyset paging on the covering index both should stay flat as
+ * transactionRows grows (and with it every customer's history); compare across the transactionRows
+ * values, e.g. java -jar benchmarks.jar HistoryBenchmark -p transactionRows=1000000,100000000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class HistoryBenchmark {
+
+    @Param({"50"})
+    public int pageSize;
+
+    private int next;
+
+    @Benchmark
+    public Object firstPage(HistoryDatabase db) throws SQLException {
+        int i = next++ & (HistoryDatabase.SAMPLE - 1);
+        return App.customerHistory(db.customerIds[i], null, pageSize);
+    }
+
+    @Benchmark
+    public Object middlePage(HistoryDatabase db) throws SQLException {
+        int i = next++ & (HistoryDatabase.SAMPLE - 1);
+        return App.customerHistory(db.customerIds[i], db.middleCursors[i], pageSize);
+    }
+}
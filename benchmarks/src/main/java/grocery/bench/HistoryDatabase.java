@@ -0,0 +1,44 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+
+/**
+ * The embedded database with CUSTOMERS customers and products and transactionRows Transactions rows
+ * spread over a year, plus SAMPLE customers whose history cursors (halfway through each history) are
+ * precomputed, so a benchmark can start a page deep inside a long history. 100M rows fit only with
+ * a large heap, e.g. -p transactionRows=100000000 -jvmArgsAppend -Xmx48g.
+ */
+@State(Scope.Benchmark)
+public class HistoryDatabase {
+
+    static final int CUSTOMERS = 10_000;
+    static final int SAMPLE = 64;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int transactionRows;
+
+    int[] customerIds;
+    String[] middleCursors;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException, IOException {
+        BenchmarkDatabase.configure();
+        BenchmarkDatabase.reset(CUSTOMERS);
+        BenchmarkDatabase.appendHistory(transactionRows, CUSTOMERS);
+        SplittableRandom random = new SplittableRandom(7);
+        customerIds = new int[SAMPLE];
+        middleCursors = new String[SAMPLE];
+        for (int i = 0; i < SAMPLE; i++) {
+            customerIds[i] = 1 + random.nextInt(CUSTOMERS);
+            middleCursors[i] = BenchmarkDatabase.middleHistoryCursor(customerIds[i]);
+        }
+    }
+}
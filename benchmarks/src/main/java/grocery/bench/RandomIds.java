@@ -0,0 +1,26 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+
+/** Per-thread id generator with a fixed seed per thread index, so every run draws the same ids. */
+@State(Scope.Thread)
+public class RandomIds {
+
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup(ThreadParams thread) {
+        random = new SplittableRandom(1_000 + thread.getThreadIndex());
+    }
+
+    /** Uniform id in 1..tableSize. */
+    int next(SeededDatabase db) {
+        return 1 + random.nextInt(db.tableSize);
+    }
+}
@@ -0,0 +1,29 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * updateRewards for a random customer. Run with -jvmArgsAppend -Dgrocery.rewards.flushIntervalMs=...
+ * to measure the write-behind buffer instead of one UPDATE per call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class RewardsBenchmark {
+
+    @Benchmark
+    public void updateRewards(SeededDatabase db, RandomIds ids) throws SQLException {
+        App.addRewardPoints(ids.next(db), 1);
+    }
+}
@@ -0,0 +1,35 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * makeTransaction for one unit of a random product to a random customer: cash sales touch Products
+ * and Transactions, credit sales also read the price (usually from the product cache) and update Credit.
+ * Measured through executeSale, the same code path without the console message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SaleBenchmark {
+
+    @Benchmark
+    public void makeTransactionCash(SeededDatabase db, RandomIds ids) throws SQLException {
+        App.executeSale(ids.next(db), ids.next(db), "cash", 1);
+    }
+
+    @Benchmark
+    public void makeTransactionCredit(SeededDatabase db, RandomIds ids) throws SQLException {
+        App.executeSale(ids.next(db), ids.next(db), "credit", 1);
+    }
+}
@@ -0,0 +1,24 @@
+package grocery.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/** The embedded database, recreated and seeded with tableSize rows per table once per trial (fork). */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    @Param({"10000", "100000"})
+    public int tableSize;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException, IOException {
+        BenchmarkDatabase.configure();
+        BenchmarkDatabase.reset(tableSize);
+    }
+}
@@ -34,9 +34,17 @@ CREATE TABLE Transactions (
   product_id INT,
   Transaction_type VARCHAR(255) NOT NULL,
   Amount INT ,
+  quantity INT NOT NULL DEFAULT 1,
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   FOREIGN KEY (customer_id) REFERENCES Customers(customer_id) ON DELETE CASCADE,
   FOREIGN KEY (product_id) REFERENCES Products(product_id) ON DELETE CASCADE);
 
+CREATE INDEX idx_transactions_customer_history
+  ON Transactions (customer_id, created_at, transaction_id, product_id, Transaction_type, quantity);
+
+CREATE INDEX idx_transactions_product_history
+  ON Transactions (product_id, created_at, transaction_id, customer_id, Transaction_type, quantity);
+
 CREATE TABLE Coupons (
   coupon_id INT PRIMARY KEY AUTO_INCREMENT,
   code VARCHAR(255) NOT NULL,
@@ -49,3 +57,44 @@ CREATE TABLE Rewards (
   points INT NOT NULL,
   FOREIGN KEY (customer_id) REFERENCES Customers(customer_id) ON DELETE CASCADE);
 
+CREATE TABLE ImportProgress (
+  source VARCHAR(255) PRIMARY KEY,
+  records_done BIGINT NOT NULL);
+
+CREATE TABLE PurgeJobs (
+  entity VARCHAR(32) NOT NULL,
+  entity_id INT NOT NULL,
+  rows_deleted BIGINT NOT NULL,
+  PRIMARY KEY (entity, entity_id));
+
+CREATE TABLE JournalReplay (
+  journal VARCHAR(255) PRIMARY KEY,
+  applied_seq BIGINT NOT NULL);
+
+CREATE TABLE JournalRejects (
+  journal VARCHAR(255) NOT NULL,
+  seq BIGINT NOT NULL,
+  customer_id INT NOT NULL,
+  product_id INT NOT NULL,
+  transaction_type VARCHAR(255) NOT NULL,
+  quantity INT NOT NULL,
+  discount DECIMAL(10,2) NOT NULL,
+  coupon_code VARCHAR(255),
+  sold_at TIMESTAMP NULL,
+  reason VARCHAR(1024) NOT NULL,
+  rejected_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (journal, seq));
+
+CREATE TABLE DailyProductSales (
+  sale_date DATE NOT NULL,
+  product_id INT NOT NULL,
+  units BIGINT NOT NULL,
+  transactions BIGINT NOT NULL,
+  PRIMARY KEY (sale_date, product_id));
+
+CREATE TABLE DailyCustomerSales (
+  sale_date DATE NOT NULL,
+  customer_id INT NOT NULL,
+  units BIGINT NOT NULL,
+  transactions BIGINT NOT NULL,
+  PRIMARY KEY (sale_date, customer_id));